@@ -0,0 +1,103 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builds mines and compositions for benchmarks without a running server
+ */
+final class BenchmarkMines {
+
+    private BenchmarkMines() {
+    }
+
+    /**
+     * Build a complete composition from the first block materials
+     * Weights are multiples of 1/1024 so that they total exactly 1 and the fill material is never needed
+     *
+     * @param materialCount The number of materials in the composition
+     * @return a valid composition
+     */
+    static Composition composition(int materialCount) {
+        List<Material> blocks = new ArrayList<>();
+        for (Material m : Material.values()) {
+            if (m.isBlock() && !m.isAir() && !m.name().startsWith("LEGACY_"))
+                blocks.add(m);
+            if (blocks.size() == materialCount)
+                break;
+        }
+        int share = 1024 / materialCount;
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            int weight = i == blocks.size() - 1 ? 1024 - (share * i) : share;
+            entries.add(blocks.get(i).name() + ":" + (weight / 1024d));
+        }
+        return new Composition(null, entries);
+    }
+
+    /**
+     * Create a world that only supports the methods mines need for lookups
+     *
+     * @return a stand in world with a random UUID
+     */
+    static World world() {
+        UUID uid = UUID.randomUUID();
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class[]{World.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getUID" -> uid;
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> uid.hashCode();
+                    case "getName" -> "benchmark";
+                    default -> null;
+                });
+    }
+
+    /**
+     * Create a mine that doesn't schedule any tasks
+     *
+     * @param name        The name of the mine
+     * @param world       The world the mine is in
+     * @param min         The minimum corner as x, y, z
+     * @param max         The maximum corner as x, y, z
+     * @param composition The composition of the mine
+     * @return a mine that can be used without a plugin instance
+     */
+    static Mine mine(String name, World world, int[] min, int[] max, Composition composition) {
+        return new BenchmarkMine(name, new Location(world, max[0], max[1], max[2]),
+                new Location(world, min[0], min[1], min[2]), composition);
+    }
+
+    private static class BenchmarkMine extends Mine {
+
+        private BenchmarkMine(String name, Location l1, Location l2, Composition composition) {
+            super(null, name, l1, l2, composition, null, 15, false);
+        }
+
+        @Override
+        public void restartResetTimer() {
+            //There is no scheduler outside a server, and benchmarks never reset on a timer
+        }
+    }
+}
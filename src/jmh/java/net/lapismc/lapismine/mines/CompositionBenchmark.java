@@ -0,0 +1,47 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of picking a single block from a composition, this is the innermost call of every reset
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompositionBenchmark {
+
+    @Param({"2", "10", "50"})
+    public int materials;
+
+    private Composition composition;
+
+    @Setup
+    public void setup() {
+        composition = BenchmarkMines.composition(materials);
+        //Compile outside the measurement
+        composition.getNextMaterial();
+    }
+
+    @Benchmark
+    public Material getNextMaterial() {
+        return composition.getNextMaterial();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of finding mines by location and by name as the number of mines grows
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MineLookupBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int MINES_PER_ROW = 100;
+
+    @Param({"10", "1000", "10000"})
+    public int mineCount;
+
+    private MineRegistry registry;
+    private List<Mine> mines;
+    private UUID worldId;
+    private final Location[] locations = new Location[QUERIES];
+    private final int[][] points = new int[QUERIES][];
+    private final String[] names = new String[QUERIES];
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        World world = BenchmarkMines.world();
+        worldId = world.getUID();
+        Composition composition = BenchmarkMines.composition(2);
+        registry = new MineRegistry();
+        //16 block cubes laid out in rows with a 16 block gap between them
+        for (int i = 0; i < mineCount; i++) {
+            int x = (i % MINES_PER_ROW) * 32;
+            int z = (i / MINES_PER_ROW) * 32;
+            registry.add(BenchmarkMines.mine("Mine" + i, world, new int[]{x, 64, z},
+                    new int[]{x + 15, 79, z + 15}, composition));
+        }
+        mines = registry.getMines();
+        //Half of the queries land inside a mine, the other half land in the gaps
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < QUERIES; i++) {
+            int mine = random.nextInt(mineCount);
+            int offset = i % 2 == 0 ? random.nextInt(16) : 16 + random.nextInt(16);
+            int x = (mine % MINES_PER_ROW) * 32 + offset;
+            int y = 64 + random.nextInt(16);
+            int z = (mine / MINES_PER_ROW) * 32 + random.nextInt(16);
+            points[i] = new int[]{x, y, z};
+            locations[i] = new Location(world, x + 0.5, y, z + 0.5);
+            names[i] = "mine" + random.nextInt(mineCount);
+        }
+    }
+
+    /**
+     * How callers found a player's mine before the index, checking every mine in turn
+     */
+    @Benchmark
+    public Mine isInMineScan() {
+        Location loc = locations[cursor++ & (QUERIES - 1)];
+        for (Mine m : mines) {
+            if (m.isInMine(loc))
+                return m;
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Mine indexLookup() {
+        int[] point = points[cursor++ & (QUERIES - 1)];
+        return registry.getIndex().getMineAt(worldId, point[0], point[1], point[2]);
+    }
+
+    @Benchmark
+    public Mine getMineByName() {
+        return registry.getMine(names[cursor++ & (QUERIES - 1)]);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of choosing every block for a reset, before anything is written to the world
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResetPlanBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int volume;
+
+    private Mine mine;
+
+    @Setup
+    public void setup() {
+        //Each volume is made of whole numbers of blocks on each side
+        int[] size = switch (volume) {
+            case 10000 -> new int[]{25, 16, 25};
+            case 1000000 -> new int[]{100, 100, 100};
+            case 10000000 -> new int[]{250, 160, 250};
+            default -> throw new IllegalArgumentException("Unsupported volume " + volume);
+        };
+        mine = BenchmarkMines.mine("plan", BenchmarkMines.world(), new int[]{0, 0, 0},
+                new int[]{size[0] - 1, size[1] - 1, size[2] - 1}, BenchmarkMines.composition(10));
+    }
+
+    @Benchmark
+    public ResetPlan planReset() {
+        return mine.planReset();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per tick and per second overhead of measuring tick times and adjusting the reset budget
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickBudgetBenchmark {
+
+    private TickTimeStorage storage;
+    private TickBudget budget;
+    private long now;
+
+    @Setup
+    public void setup() {
+        storage = new TickTimeStorage(40);
+        budget = new TickBudget(50, 1, 15);
+        now = System.nanoTime();
+        //Fill both with a full history of 50ms ticks
+        for (int i = 0; i < 40; i++) {
+            now += 50_000_000L;
+            storage.add(50_000_000L);
+            budget.tick(now);
+        }
+    }
+
+    @Benchmark
+    public void tickTimeStorageAdd() {
+        storage.add(50_000_000L);
+    }
+
+    @Benchmark
+    public long tickTimeStoragePercentile() {
+        return storage.getPercentile(0.95);
+    }
+
+    @Benchmark
+    public double calculateAdjustment() {
+        return budget.calculateAdjustment(budget.getTargetMillis());
+    }
+
+    @Benchmark
+    public long budgetTick() {
+        now += 50_000_000L;
+        return budget.tick(now);
+    }
+}
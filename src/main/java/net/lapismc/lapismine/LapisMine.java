@@ -20,12 +20,19 @@ import net.lapismc.lapiscore.LapisCoreConfiguration;
 import net.lapismc.lapiscore.LapisCorePlugin;
 import net.lapismc.lapiscore.utils.PrettyTimeUtil;
 import net.lapismc.lapismine.commands.LapisMineCommand;
-import net.lapismc.lapismine.mines.Mine;
+import net.lapismc.lapismine.metrics.MetricsExporter;
+import net.lapismc.lapismine.metrics.ResetMetrics;
+import net.lapismc.lapismine.mines.*;
 import net.lapismc.lapismine.scheduler.LapisMineRunnable;
+import net.lapismc.lapismine.scheduler.TimerWheel;
+import net.lapismc.lapismine.storage.BinaryMineStorage;
+import net.lapismc.lapismine.storage.MineStorage;
+import net.lapismc.lapismine.storage.YamlMineStorage;
 import net.lapismc.lapismine.worldedit.WorldEditIntegrationManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -36,6 +43,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A plugin to manage automatically resetting mines
@@ -59,7 +70,36 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
      * A utility class for regenerating any size mine without causing lag
      */
     public LapisMineRunnable scheduler;
-    private final List<Mine> mines = new ArrayList<>();
+    /**
+     * Runs the reset and plan deadlines of every mine from one repeating task
+     */
+    public TimerWheel timers;
+    /**
+     * A pool of background threads for work that doesn't need the server thread, such as planning resets
+     */
+    public ExecutorService workers;
+    /**
+     * Counters and histograms describing how long resets take
+     */
+    public ResetMetrics metrics;
+    /**
+     * Decides when each mine resets so that resets are spread out
+     */
+    public ResetPlanner resetPlanner;
+    /**
+     * Sends the warnings and countdowns for upcoming resets
+     */
+    public ResetBroadcaster broadcaster;
+    /**
+     * Writes changed mines to disk in the background
+     */
+    public MineSaveQueue saveQueue;
+    /**
+     * Where mine settings are kept, either a YAML file per mine or a single binary file
+     */
+    public MineStorage storage;
+    private final MineRegistry mines = new MineRegistry();
+    private MineOccupancyListener occupancyListener;
 
     /**
      * Get an instance of this class
@@ -73,13 +113,34 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
     @Override
     public void onEnable() {
         LapisMine.instance = this;
+        workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+            Thread t = new Thread(r, "LapisMine Worker");
+            t.setDaemon(true);
+            return t;
+        });
+        config = new LapisCoreConfiguration(this, 2, 2);
+        //The scheduler reads its limits from the config
         scheduler = new LapisMineRunnable(this);
-        config = new LapisCoreConfiguration(this, 1, 1);
+        metrics = new ResetMetrics(scheduler::getCurrentTick);
+        new MetricsExporter(this);
         new LapisMineFileWatcher(this);
         fillMaterial = Material.getMaterial(getConfig().getString("FillMaterial", "STONE"));
         worldEditManager = new WorldEditIntegrationManager(this);
         prettyTime = new PrettyTimeUtil();
+        timers = new TimerWheel(this);
+        resetPlanner = new ResetPlanner(this);
+        broadcaster = new ResetBroadcaster(this);
+        storage = createStorage();
+        saveQueue = new MineSaveQueue(this, storage);
         loadMines();
+        //Mines are planned as they load, plan them again now that every mine's slot is known
+        resetPlanner.replanAll();
+        //Finish any resets that were still running when the server stopped
+        for (Mine m : getMines()) {
+            m.resumeInterruptedReset();
+        }
+        occupancyListener = new MineOccupancyListener(this);
+        new MineBlockListener(this);
         new LapisMineCommand(this);
         Bukkit.getPluginManager().registerEvents(this, this);
         super.onEnable();
@@ -87,7 +148,14 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
 
     @Override
     public void onDisable() {
+        broadcaster.shutdown();
         saveMines();
+        for (Mine m : getMines()) {
+            m.saveDirtyBitmap();
+            m.flushJournal();
+        }
+        saveQueue.flushNow();
+        workers.shutdownNow();
         super.onDisable();
     }
 
@@ -100,17 +168,9 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
     public void onPlayerJoin(PlayerJoinEvent e) {
         Player p = e.getPlayer();
         //Check if the player is within the bounds of a mine
-        boolean isPlayerInMine = false;
-        Mine mine = null;
-        for (Mine m : mines) {
-            if (m.isPlayerInMine(p)) {
-                isPlayerInMine = true;
-                mine = m;
-                break;
-            }
-        }
+        Mine mine = mines.getMineAt(p.getLocation());
         //Don't continue if they aren't in a mine
-        if (!isPlayerInMine)
+        if (mine == null)
             return;
         //Get the times for when they were last online and when the mine last reset
         long lastPlayed = p.getLastPlayed();
@@ -124,27 +184,45 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
     }
 
     /**
-     * Creates an empty mine object with the given points and name, will not proceed if there is already a mine with this name
+     * Creates an empty mine object with the given points and name
+     * Will not proceed if there is already a mine with this name or if the points overlap an existing mine
      *
      * @param name The name of the mine
      * @param l1   The maximum point of the mine
      * @param l2   the minimum point of the mine
+     * @return true if the mine was created, otherwise false
      */
-    public void createMine(String name, Location l1, Location l2) {
+    public boolean createMine(String name, Location l1, Location l2) {
         if (getMine(name) != null)
-            return;
+            return false;
+        if (getOverlappingMine(l1, l2) != null)
+            return false;
         Mine m = new Mine(this, name, l1, l2);
-        mines.add(m);
-        saveMines();
+        if (!addMine(m)) {
+            m.shutdownMine();
+            return false;
+        }
+        saveMine(m);
+        return true;
     }
 
     /**
      * Add a mine to the stored list of mines, only use this if you have initialized a mine yourself
+     * Mines can't share blocks, so a mine that overlaps a loaded mine isn't added
      *
      * @param mine The mine to be tracked
+     * @return true if the mine was added, false if it overlaps a loaded mine
      */
-    public void addMine(Mine mine) {
-        mines.add(mine);
+    public boolean addMine(Mine mine) {
+        Mine overlap = mines.add(mine);
+        if (overlap != null) {
+            getLogger().warning("Mine " + mine.getName() + " overlaps mine " + overlap.getName() + " and was not added");
+            return false;
+        }
+        resetPlanner.add(mine);
+        if (occupancyListener != null)
+            occupancyListener.refresh();
+        return true;
     }
 
     /**
@@ -155,6 +233,48 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
      */
     public void removeMine(Mine m) {
         mines.remove(m);
+        resetPlanner.remove(m);
+        if (occupancyListener != null)
+            occupancyListener.refresh();
+    }
+
+    /**
+     * Get the mine that contains a location
+     *
+     * @param loc The location to check
+     * @return the Mine containing the location, null if the location isn't in a mine
+     */
+    public Mine getMineAt(Location loc) {
+        return mines.getMineAt(loc);
+    }
+
+    /**
+     * Find an existing mine that would overlap a mine with the given corners
+     *
+     * @param l1 The first corner of the region
+     * @param l2 The opposite corner of the region
+     * @return a mine that shares blocks with the region, or null if the region is free
+     */
+    public Mine getOverlappingMine(Location l1, Location l2) {
+        return mines.getIndex().getOverlappingMine(l1.getWorld(), new MineBounds(l1, l2));
+    }
+
+    /**
+     * Re-check which mine every online player is in
+     * This is done automatically when mines are added or removed, call it after moving a mine
+     */
+    public void refreshOccupancy() {
+        if (occupancyListener != null)
+            occupancyListener.refresh();
+    }
+
+    /**
+     * Get the spatial index used to find which mine contains a location
+     *
+     * @return the mine index
+     */
+    public MineIndex getMineIndex() {
+        return mines.getIndex();
     }
 
     /**
@@ -164,12 +284,16 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
      * @return the Mine object for the given mine name, null if there is no Mine for that name
      */
     public Mine getMine(String name) {
-        for (Mine m : mines) {
-            if (m.getName().equalsIgnoreCase(name)) {
-                return m;
-            }
-        }
-        return null;
+        return mines.getMine(name);
+    }
+
+    /**
+     * Get the names of all mines, sorted alphabetically
+     *
+     * @return an unmodifiable list of mine names
+     */
+    public List<String> getMineNames() {
+        return mines.getMineNames();
     }
 
     /**
@@ -178,44 +302,148 @@ public final class LapisMine extends LapisCorePlugin implements Listener {
      * @return a list containing all mines
      */
     public List<Mine> getMines() {
-        return mines;
+        return mines.getMines();
     }
 
 
-    private void loadMines() {
-        File minesFolder = new File(getDataFolder(), "Mines");
-        if (!minesFolder.exists())
-            if (!minesFolder.mkdir())
-                return;
-        File[] mineFiles = minesFolder.listFiles();
-        if (mineFiles == null)
-            return;
-        for (File f : mineFiles) {
-            YamlConfiguration config = YamlConfiguration.loadConfiguration(f);
-            mines.add(new Mine(this, config));
+    /**
+     * Add several mines to the stored list of mines at once, this is much faster than adding them one by one
+     * Mines that overlap a loaded mine, or another mine in the list, are logged and left out
+     *
+     * @param toAdd The mines to be tracked
+     * @return the mines that were added
+     */
+    public List<Mine> addMines(List<Mine> toAdd) {
+        Map<Mine, Mine> rejected = mines.addAll(toAdd);
+        List<Mine> added = new ArrayList<>(toAdd.size());
+        for (Mine m : toAdd) {
+            Mine overlap = rejected.get(m);
+            if (overlap == null) {
+                added.add(m);
+                continue;
+            }
+            m.shutdownMine();
+            getLogger().warning("Mine " + m.getName() + " overlaps mine " + overlap.getName() + " and was not loaded");
         }
-        getLogger().info("Loaded " + mines.size() + " mine(s)!");
+        resetPlanner.addAll(added);
+        if (occupancyListener != null)
+            occupancyListener.refresh();
+        return added;
     }
 
     /**
-     * Save the mines current settings to its Yaml Configuration file
-     * This can be safely called at any time without interrupting the operation of the mine
+     * Load mines from another storage, such as YAML files when mines are kept in the binary storage
+     * Mines with the same name as a loaded mine are skipped, the rest are saved into this servers storage
+     *
+     * @param source The storage to load from
+     * @return the number of mines imported
      */
-    public void saveMines() {
+    public int importMines(MineStorage source) {
+        List<Mine> imported = addMines(readMines(source, false));
+        //Planning every mine once they are all registered moves the existing mines over for the imported ones
+        resetPlanner.replanAll();
+        for (Mine m : imported) {
+            saveMine(m);
+        }
+        return imported.size();
+    }
+
+    private MineStorage createStorage() {
         File minesFolder = new File(getDataFolder(), "Mines");
-        for (Mine m : mines) {
-            File f = new File(minesFolder, m.getName() + ".yml");
-            if (!f.exists()) {
-                try {
-                    if (!f.createNewFile())
-                        throw new IOException("Could not create file " + f.getName());
-                } catch (IOException e) {
-                    getLogger().warning("Failed to save file for " + m.getName());
-                }
+        if (getConfig().getString("Storage.Type", "YAML").equalsIgnoreCase("Binary")) {
+            try {
+                return new BinaryMineStorage(new File(getDataFolder(), "mines.db"), getLogger());
+            } catch (IOException e) {
+                getLogger().severe("Unable to open mines.db, using YAML files in the Mines folder instead: "
+                        + e.getMessage());
+            }
+        }
+        return new YamlMineStorage(minesFolder);
+    }
+
+    private void loadMines() {
+        addMines(readMines(storage, true));
+        getLogger().info("Loaded " + mines.getMines().size() + " mine(s)!");
+    }
+
+    /**
+     * Read and create every mine in a storage, skipping any that can't be read or have the name of a loaded mine
+     * The created mines have no reset scheduled and haven't been added yet
+     *
+     * @param source       The storage to read from
+     * @param isOwnStorage true if the mines are saved in this storage, so that they aren't written back unchanged
+     * @return the mines that were created
+     */
+    private List<Mine> readMines(MineStorage source, boolean isOwnStorage) {
+        List<String> names;
+        try {
+            names = source.getMineNames();
+        } catch (IOException e) {
+            getLogger().severe("Unable to list the stored mines: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        //Reading and parsing is spread across the workers
+        List<CompletableFuture<ParsedMine>> parsing = new ArrayList<>();
+        for (String name : names) {
+            parsing.add(CompletableFuture.supplyAsync(() -> parseMine(source, name), workers));
+        }
+        //Creating the mines happens here, on the server thread
+        List<Mine> loaded = new ArrayList<>();
+        for (CompletableFuture<ParsedMine> future : parsing) {
+            ParsedMine parsed = future.join();
+            if (parsed.config() == null)
+                continue;
+            String name = parsed.config().getString("Name");
+            if (name != null && getMine(name) != null)
+                continue;
+            try {
+                //Resets are scheduled for every mine together once loading has finished
+                Mine m = new Mine(this, parsed.config(), false);
+                loaded.add(m);
+                if (isOwnStorage)
+                    saveQueue.markLoaded(m.getName(), parsed.content());
+            } catch (RuntimeException e) {
+                getLogger().warning("Failed to load mine " + parsed.name() + ": " + e.getMessage());
             }
-            YamlConfiguration config = YamlConfiguration.loadConfiguration(f);
-            m.saveMine(config);
         }
+        return loaded;
+    }
+
+    private ParsedMine parseMine(MineStorage source, String name) {
+        try {
+            String content = source.read(name);
+            if (content == null)
+                return new ParsedMine(name, null, null);
+            YamlConfiguration config = new YamlConfiguration();
+            config.loadFromString(content);
+            return new ParsedMine(name, content, config);
+        } catch (IOException | InvalidConfigurationException e) {
+            getLogger().warning("Failed to read mine " + name + ": " + e.getMessage());
+            return new ParsedMine(name, null, null);
+        }
+    }
+
+    private record ParsedMine(String name, String content, YamlConfiguration config) {
+    }
+
+    /**
+     * Save every mines current settings to its Yaml Configuration file
+     * Saves happen in the background and only mines that have actually changed are written
+     */
+    public void saveMines() {
+        for (Mine m : mines.getMines()) {
+            saveQueue.markDirty(m);
+        }
+    }
+
+    /**
+     * Save a mines current settings to its Yaml Configuration file
+     * The save happens in the background a moment later, so several changes in a row are written together
+     *
+     * @param m The mine that has changed
+     */
+    public void saveMine(Mine m) {
+        saveQueue.markDirty(m);
     }
 
 }
@@ -17,14 +17,26 @@
 package net.lapismc.lapismine;
 
 import net.lapismc.lapiscore.utils.LapisCoreFileWatcher;
+import net.lapismc.lapiscore.utils.LapisTaskHandler;
 import net.lapismc.lapismine.mines.Mine;
+import net.lapismc.lapismine.storage.YamlMineStorage;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LapisMineFileWatcher extends LapisCoreFileWatcher {
 
+    //Editors often write a file several times when saving, wait this long after the last change before reloading
+    private static final long DEBOUNCE_TICKS = 10;
     private final LapisMine plugin;
+    private final Map<String, LapisTaskHandler.LapisTask> pendingReloads = new ConcurrentHashMap<>();
 
     /**
      * Start the file watcher
@@ -39,26 +51,65 @@ public class LapisMineFileWatcher extends LapisCoreFileWatcher {
     @Override
     public void checkOtherFile(File f) {
         //Replace the file with the fully qualified file
-        f = new File(plugin.getDataFolder().getAbsolutePath(), f.getPath());
-        if (!f.getParentFile().getName().contains("Mines"))
+        File file = new File(plugin.getDataFolder().getAbsolutePath(), f.getPath());
+        if (!file.getParentFile().getName().contains("Mines") || !file.getName().endsWith(".yml"))
+            return;
+        //YAML files are only exports when mines are kept in the binary storage, editing them changes nothing
+        if (!(plugin.storage instanceof YamlMineStorage))
             return;
         //We now know that it is one of our mine config files that has been edited
+        String key = file.getAbsolutePath();
+        //The task needs a reference to itself, so that it only clears the pending entry if it hasn't been replaced
+        LapisTaskHandler.LapisTask[] reload = new LapisTaskHandler.LapisTask[1];
+        reload[0] = plugin.tasks.runTaskLater(() -> {
+            pendingReloads.remove(key, reload[0]);
+            reloadMine(file);
+        }, DEBOUNCE_TICKS, false);
+        LapisTaskHandler.LapisTask previous = pendingReloads.put(key, reload[0]);
+        if (previous != null) {
+            plugin.tasks.removeTask(previous);
+            previous.cancel();
+        }
+    }
+
+    private void reloadMine(File f) {
         //Load the Yaml
-        YamlConfiguration mineYaml = YamlConfiguration.loadConfiguration(f);
+        String content;
+        try {
+            content = Files.readString(f.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return;
+        }
+        YamlConfiguration mineYaml = new YamlConfiguration();
+        try {
+            mineYaml.loadFromString(content);
+        } catch (InvalidConfigurationException e) {
+            plugin.getLogger().warning("Couldn't reload " + f.getName() + ", it isn't valid YAML: " + e.getMessage());
+            return;
+        }
         String mineName = mineYaml.getString("Name");
+        //Our own saves also trigger the watcher, there is nothing to reload if the file is what we wrote
+        if (mineName == null || plugin.saveQueue.isLastWritten(mineName, content))
+            return;
         Mine toReload = plugin.getMine(mineName);
         if (toReload == null) {
             plugin.getLogger().warning("Tried to reload " + mineName + " from an edited Yaml file, but couldn't find a mine of that name");
             return;
         }
-        //Shutdown and register the mine
-        toReload.shutdownMine();
-        plugin.removeMine(toReload);
-        //Load the new mine
-        Mine newMine = new Mine(plugin, mineYaml);
-        plugin.addMine(newMine);
+        //Only the settings that were edited are changed, so timers and resets in progress carry on
+        List<String> changed;
+        try {
+            changed = toReload.applyChanges(mineYaml);
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Couldn't reload " + f.getName() + ": " + e.getMessage());
+            return;
+        }
+        plugin.saveQueue.markLoaded(mineName, content);
+        if (changed.isEmpty())
+            return;
         //Notify console that it was loaded
-        plugin.getLogger().info("Changes made to mine \"" + newMine.getName() + "\" have been loaded!");
+        plugin.getLogger().info("Changes made to " + String.join(", ", changed) + " of mine \"" + toReload.getName()
+                + "\" have been loaded!");
     }
 
 }
@@ -18,14 +18,22 @@ package net.lapismc.lapismine.commands;
 
 import net.lapismc.lapiscore.commands.LapisCoreCommand;
 import net.lapismc.lapismine.LapisMine;
+import net.lapismc.lapismine.metrics.MineMetrics;
+import net.lapismc.lapismine.mines.Composition;
+import net.lapismc.lapismine.mines.CompositionLayer;
 import net.lapismc.lapismine.mines.Mine;
+import net.lapismc.lapismine.scheduler.SchedulerStats;
+import net.lapismc.lapismine.storage.YamlMineStorage;
 import net.lapismc.lapismine.worldedit.WorldEdit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.File;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 public class LapisMineCommand extends LapisCoreCommand {
@@ -60,8 +68,12 @@ public class LapisMineCommand extends LapisCoreCommand {
                     }
                     Location l1 = we.getL1(p);
                     Location l2 = we.getL2(p);
-                    plugin.createMine(name, l1, l2);
-                    sendMessage(sender, "Create.Success");
+                    if (plugin.getOverlappingMine(l1, l2) != null) {
+                        sendMessage(sender, "Create.Overlap");
+                        return;
+                    }
+                    if (plugin.createMine(name, l1, l2))
+                        sendMessage(sender, "Create.Success");
                 } else {
                     sendMessage(sender, "Create.Help");
                     return;
@@ -83,6 +95,30 @@ public class LapisMineCommand extends LapisCoreCommand {
                 return;
             }
 
+            //mine import
+            if (args[0].equalsIgnoreCase("import")) {
+                importMines(sender);
+                return;
+            }
+
+            //mine export
+            if (args[0].equalsIgnoreCase("export")) {
+                exportMines(sender);
+                return;
+            }
+
+            //mine timeline
+            if (args[0].equalsIgnoreCase("timeline")) {
+                timeline(sender);
+                return;
+            }
+
+            //mine stats [name]
+            if (args[0].equalsIgnoreCase("stats")) {
+                stats(sender, args);
+                return;
+            }
+
             //mine (name)
             if (args.length == 1) {
                 sendMessage(sender, "Help", "Reset.Help", "Config.Help", "Composition.Help");
@@ -132,7 +168,7 @@ public class LapisMineCommand extends LapisCoreCommand {
                                 m.setSurface(mat);
                             }
                             sendMessage(sender, "Config.Surface.Success");
-                            plugin.saveMines();
+                            plugin.saveMine(m);
                             break;
                         case "resetfrequency":
                             int i;
@@ -144,11 +180,11 @@ public class LapisMineCommand extends LapisCoreCommand {
                             }
                             m.setResetFrequency(i);
                             sendMessage(sender, "Config.ResetFrequency.Success");
-                            plugin.saveMines();
+                            plugin.saveMine(m);
                             break;
                         case "teleport":
                             m.setTeleport(p.getLocation());
-                            plugin.saveMines();
+                            plugin.saveMine(m);
                             sendMessage(sender, "Config.TeleportSuccess");
                             break;
                         case "replaceonlyair":
@@ -162,6 +198,61 @@ public class LapisMineCommand extends LapisCoreCommand {
                                 sendMessage(sender, "Config.ReplaceOnlyAir.NotBoolean");
                             }
                             break;
+                        case "diffreset":
+                            if (settingValue.equalsIgnoreCase("true")) {
+                                m.setDiffReset(true);
+                                sendMessage(sender, "Config.DiffReset.Enabled");
+                            } else if (settingValue.equalsIgnoreCase("false")) {
+                                m.setDiffReset(false);
+                                sendMessage(sender, "Config.DiffReset.Disabled");
+                            } else {
+                                sendMessage(sender, "Config.DiffReset.NotBoolean");
+                                return;
+                            }
+                            plugin.saveMine(m);
+                            break;
+                        case "hashedgeneration":
+                            if (settingValue.equalsIgnoreCase("true")) {
+                                m.setHashedGeneration(true);
+                                sendMessage(sender, "Config.HashedGeneration.Enabled");
+                            } else if (settingValue.equalsIgnoreCase("false")) {
+                                m.setHashedGeneration(false);
+                                sendMessage(sender, "Config.HashedGeneration.Disabled");
+                            } else {
+                                sendMessage(sender, "Config.HashedGeneration.NotBoolean");
+                                return;
+                            }
+                            plugin.saveMine(m);
+                            break;
+                        case "template":
+                            if (settingValue.equalsIgnoreCase("true")) {
+                                m.setUseTemplate(true);
+                                sendMessage(sender, "Config.Template.Enabled");
+                            } else if (settingValue.equalsIgnoreCase("false")) {
+                                m.setUseTemplate(false);
+                                sendMessage(sender, "Config.Template.Disabled");
+                            } else if (settingValue.equalsIgnoreCase("regenerate")) {
+                                if (m.regenerateTemplate()) {
+                                    sendMessage(sender, "Config.Template.Regenerating");
+                                } else {
+                                    sendMessage(sender, "Config.Template.NotEnabled");
+                                }
+                                return;
+                            } else {
+                                try {
+                                    int resets = Integer.parseInt(settingValue);
+                                    if (!m.setTemplateRegenerateEvery(Math.max(0, resets))) {
+                                        sendMessage(sender, "Config.Template.NotEnabled");
+                                        return;
+                                    }
+                                    sendMessage(sender, "Config.Template.RegenerateEvery");
+                                } catch (NumberFormatException e) {
+                                    sendMessage(sender, "Config.Template.Invalid");
+                                    return;
+                                }
+                            }
+                            plugin.saveMine(m);
+                            break;
                         default:
                             sendMessage(sender, "Config.NoSuchSetting");
                     }
@@ -177,49 +268,104 @@ public class LapisMineCommand extends LapisCoreCommand {
         //mine mine composition remove MATERIAL
         //mine mine composition status
         //mine mine composition fill
+        //mine mine composition mode (Bands|Gradient)
+        //mine mine composition layers
+        //mine mine composition layer LAYER create MINY MAXY
+        //mine mine composition layer LAYER delete
+        //mine mine composition layer LAYER (set|remove|status|fill)
         String name = args[0];
         Mine m = plugin.getMine(name);
         if (m == null) {
             sendMessage(sender, "Error.NoSuchMine");
             return;
         }
-        String command = args[2];
+        //The set, remove, status and fill commands work on the main composition or on a layer's composition
+        Composition composition = m.getComposition();
+        int start = 2;
+        if (args[2].equalsIgnoreCase("layers")) {
+            if (m.getLayers().isEmpty()) {
+                sendMessage(sender, "Composition.Layer.None");
+                return;
+            }
+            sendMessage(sender, "Composition.Layer.List");
+            for (CompositionLayer layer : m.getLayers()) {
+                p.sendMessage(layer.getName() + " - " + layer.getMinY() + " to " + layer.getMaxY());
+            }
+            return;
+        } else if (args[2].equalsIgnoreCase("mode")) {
+            CompositionLayer.Mode mode = args.length == 4 ? CompositionLayer.Mode.fromName(args[3]) : null;
+            if (mode == null) {
+                sendMessage(sender, "Composition.Mode.Help");
+                return;
+            }
+            m.setLayerMode(mode);
+            sendMessage(sender, "Composition.Mode.Success");
+            plugin.saveMine(m);
+            return;
+        } else if (args[2].equalsIgnoreCase("layer")) {
+            if (args.length < 5) {
+                sendMessage(sender, "Composition.Layer.Help");
+                return;
+            }
+            String layerName = args[3];
+            if (args[4].equalsIgnoreCase("create")) {
+                createLayer(sender, args, m, layerName);
+                return;
+            }
+            if (args[4].equalsIgnoreCase("delete")) {
+                if (m.removeLayer(layerName)) {
+                    sendMessage(sender, "Composition.Layer.Deleted");
+                    plugin.saveMine(m);
+                } else {
+                    sendMessage(sender, "Composition.Layer.NoSuchLayer");
+                }
+                return;
+            }
+            CompositionLayer layer = m.getLayer(layerName);
+            if (layer == null) {
+                sendMessage(sender, "Composition.Layer.NoSuchLayer");
+                return;
+            }
+            composition = layer.getComposition();
+            start = 4;
+        }
+        String command = args[start];
         if (command.equalsIgnoreCase("status")) {
             sendMessage(sender, "Composition.Status");
-            Map<Material, Double> matMap = m.getComposition().getMaterialMap();
+            Map<Material, Double> matMap = composition.getMaterialMap();
             for (Material mat : matMap.keySet()) {
                 Double d = matMap.get(mat);
                 p.sendMessage(mat.name() + " - " + d);
             }
             sendMessage(sender, "Composition.RemainingPercentage");
-            p.sendMessage(String.valueOf(m.getComposition().getUnassignedPercentage()));
+            p.sendMessage(String.valueOf(composition.getUnassignedPercentage()));
 
         } else if (command.equalsIgnoreCase("remove")) {
-            if (args.length != 4) {
+            if (args.length != start + 2) {
                 sendMessage(sender, "Composition.Remove.Help");
                 return;
             }
-            Material mat = Material.matchMaterial(args[3]);
+            Material mat = Material.matchMaterial(args[start + 1]);
             if (mat == null) {
                 sendMessage(sender, "Error.MaterialNotFound");
                 return;
             }
-            if (m.getComposition().removeMaterial(mat)) {
+            if (composition.removeMaterial(mat)) {
                 sendMessage(sender, "Composition.Remove.Success");
             } else {
                 sendMessage(sender, "Composition.Remove.MaterialNotPresent");
             }
             sendMessage(sender, "Composition.RemainingPercentage");
-            p.sendMessage(String.valueOf(m.getComposition().getUnassignedPercentage()));
+            p.sendMessage(String.valueOf(composition.getUnassignedPercentage()));
             //Save these changes to the mine
-            plugin.saveMines();
+            plugin.saveMine(m);
 
         } else if (command.equalsIgnoreCase("set")) {
-            if (args.length != 5) {
+            if (args.length != start + 3) {
                 sendMessage(sender, "Composition.Set.Help");
                 return;
             }
-            Material mat = Material.matchMaterial(args[3]);
+            Material mat = Material.matchMaterial(args[start + 1]);
             if (mat == null) {
                 sendMessage(sender, "Error.MaterialNotFound");
                 return;
@@ -228,7 +374,7 @@ public class LapisMineCommand extends LapisCoreCommand {
                 sendMessage(sender, "Composition.Set.NotABlock");
                 return;
             }
-            String percentageString = args[4];
+            String percentageString = args[start + 2];
             double percentage;
             try {
                 percentage = Double.parseDouble(percentageString);
@@ -236,30 +382,142 @@ public class LapisMineCommand extends LapisCoreCommand {
                 sendMessage(sender, "Composition.Set.InvalidPercentage");
                 return;
             }
-            if (m.getComposition().setMaterial(mat, percentage)) {
+            if (composition.setMaterial(mat, percentage)) {
                 sendMessage(sender, "Composition.Set.Success");
             } else {
                 sendMessage(sender, "Composition.Set.PercentageTooHigh");
             }
             sendMessage(sender, "Composition.RemainingPercentage");
-            p.sendMessage(String.valueOf(m.getComposition().getUnassignedPercentage()));
+            p.sendMessage(String.valueOf(composition.getUnassignedPercentage()));
             //Save the mine to keep these changes
-            plugin.saveMines();
+            plugin.saveMine(m);
 
         } else if (command.equalsIgnoreCase("fill")) {
-            m.getComposition().fillMaterial(plugin.fillMaterial);
+            composition.fillMaterial(plugin.fillMaterial);
             sendMessage(sender, "Composition.Fill");
         }
     }
 
+    private void createLayer(CommandSender sender, String[] args, Mine m, String layerName) {
+        //mine mine composition layer LAYER create MINY MAXY
+        if (args.length != 7) {
+            sendMessage(sender, "Composition.Layer.Help");
+            return;
+        }
+        //Layer names are used as keys in the mine file, where a full stop would split the path
+        if (layerName.contains(".")) {
+            sendMessage(sender, "Composition.Layer.InvalidName");
+            return;
+        }
+        int minY, maxY;
+        try {
+            minY = Integer.parseInt(args[5]);
+            maxY = Integer.parseInt(args[6]);
+        } catch (NumberFormatException e) {
+            sendMessage(sender, "Composition.Layer.InvalidY");
+            return;
+        }
+        if (m.addLayer(layerName, minY, maxY) == null) {
+            sendMessage(sender, "Composition.Layer.AlreadyExists");
+            return;
+        }
+        sendMessage(sender, "Composition.Layer.Created");
+        plugin.saveMine(m);
+    }
+
+    private void importMines(CommandSender sender) {
+        if (plugin.storage instanceof YamlMineStorage) {
+            sendMessage(sender, "Storage.NotBinary");
+            return;
+        }
+        int imported = plugin.importMines(new YamlMineStorage(new File(plugin.getDataFolder(), "Mines")));
+        sender.sendMessage(plugin.config.getMessage("Storage.Imported").replace("%Count%", String.valueOf(imported)));
+    }
+
+    private void exportMines(CommandSender sender) {
+        if (plugin.storage instanceof YamlMineStorage) {
+            sendMessage(sender, "Storage.NotBinary");
+            return;
+        }
+        sendMessage(sender, "Storage.Exporting");
+        plugin.saveQueue.export(plugin.getMines(), new YamlMineStorage(new File(plugin.getDataFolder(), "Mines")))
+                .whenComplete((exported, e) -> plugin.tasks.runTask(() -> {
+                    if (e != null) {
+                        plugin.getLogger().warning("Failed to export mines: " + e.getMessage());
+                        sendMessage(sender, "Storage.Failed");
+                    } else {
+                        sender.sendMessage(plugin.config.getMessage("Storage.Exported")
+                                .replace("%Count%", String.valueOf(exported)));
+                    }
+                }, false));
+    }
+
+    private void timeline(CommandSender sender) {
+        List<Mine> timeline = plugin.resetPlanner.getTimeline();
+        if (timeline.isEmpty()) {
+            sendMessage(sender, "Timeline.Empty");
+            return;
+        }
+        sendMessage(sender, "Timeline.Header");
+        String entryTemplate = plugin.config.getMessage("Timeline.Entry");
+        for (Mine m : timeline) {
+            sender.sendMessage(entryTemplate.replace("%Mine%", m.getName())
+                    .replace("%TimeUntilReset%", plugin.prettyTime.getCleanTimeDifference(m.getNextReset(), 2))
+                    .replace("%Frequency%", String.valueOf(m.getResetFrequency())));
+        }
+    }
+
+    private void stats(CommandSender sender, String[] args) {
+        MineMetrics metrics;
+        if (args.length == 2) {
+            Mine m = plugin.getMine(args[1]);
+            if (m == null) {
+                sendMessage(sender, "Error.NoSuchMine");
+                return;
+            }
+            metrics = plugin.metrics.getMine(m.getName());
+            sender.sendMessage(plugin.config.getMessage("Stats.Mine").replace("%Mine%", m.getName()));
+        } else if (args.length == 1) {
+            metrics = plugin.metrics.getGlobal();
+            sendMessage(sender, "Stats.Global");
+        } else {
+            sendMessage(sender, "Stats.Help");
+            return;
+        }
+        sender.sendMessage(plugin.config.getMessage("Stats.Resets")
+                .replace("%Count%", String.valueOf(metrics.getResets()))
+                .replace("%AverageMillis%", format(metrics.getResetMillis().getMean()))
+                .replace("%AverageTicks%", format(metrics.getResetTicks().getMean()))
+                .replace("%P95Millis%", format(metrics.getResetMillis().getPercentile(0.95))));
+        sender.sendMessage(plugin.config.getMessage("Stats.Blocks")
+                .replace("%Blocks%", String.valueOf(metrics.getBlocksWritten()))
+                .replace("%BlocksPerSecond%", format(metrics.getBlocksPerSecond())));
+        sender.sendMessage(plugin.config.getMessage("Stats.Time")
+                .replace("%PlanMillis%", format(metrics.getPlanMillis()))
+                .replace("%WriteMillis%", format(metrics.getWriteMillis())));
+        SchedulerStats scheduler = plugin.scheduler.getStats();
+        sender.sendMessage(plugin.config.getMessage("Stats.Scheduler")
+                .replace("%Queued%", String.valueOf(scheduler.queuedTasks()))
+                .replace("%BudgetMillis%", format(scheduler.budgetMillis()))
+                .replace("%UsedMillis%", format(scheduler.usedMillis())));
+        sender.sendMessage(plugin.config.getMessage("Stats.Ticks")
+                .replace("%P50%", format(scheduler.tickP50()))
+                .replace("%P95%", format(scheduler.tickP95()))
+                .replace("%Max%", format(scheduler.tickMax())));
+    }
+
+    private String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
     private void resetMine(CommandSender sender, String name) {
         Mine m = plugin.getMine(name);
         if (m == null) {
             sendMessage(sender, "Error.NoSuchMine");
             return;
         }
-        if (m.resetMine()) {
-            m.restartResetTimer();
+        //Manual resets are written before any scheduled resets that are in progress
+        if (m.resetMine(true)) {
             sendMessage(sender, "Reset.Success");
         } else {
             sendMessage(sender, "Reset.CompositionIncomplete");
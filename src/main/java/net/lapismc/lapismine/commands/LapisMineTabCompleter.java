@@ -3,8 +3,12 @@ package net.lapismc.lapismine.commands;
 import net.lapismc.lapiscore.commands.tabcomplete.LapisCoreTabCompleter;
 import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
 import net.lapismc.lapismine.commands.tabcompletions.Create;
+import net.lapismc.lapismine.commands.tabcompletions.Export;
+import net.lapismc.lapismine.commands.tabcompletions.Import;
 import net.lapismc.lapismine.commands.tabcompletions.MineName;
 import net.lapismc.lapismine.commands.tabcompletions.Remove;
+import net.lapismc.lapismine.commands.tabcompletions.Stats;
+import net.lapismc.lapismine.commands.tabcompletions.Timeline;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +26,10 @@ public class LapisMineTabCompleter extends LapisCoreTabCompleter {
         List<LapisTabOption> topLevelOptions = new ArrayList<>();
         topLevelOptions.add(new Create());
         topLevelOptions.add(new Remove());
+        topLevelOptions.add(new Stats());
+        topLevelOptions.add(new Import());
+        topLevelOptions.add(new Export());
+        topLevelOptions.add(new Timeline());
         topLevelOptions.add(new MineName(true));
         registerTopLevelOptions(this.command, topLevelOptions);
     }
@@ -0,0 +1,19 @@
+package net.lapismc.lapismine.commands.tabcompletions;
+
+import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
+import org.bukkit.command.CommandSender;
+
+import java.util.Collections;
+import java.util.List;
+
+public class Export implements LapisTabOption {
+    @Override
+    public List<String> getOptions(CommandSender sender) {
+        return Collections.singletonList("export");
+    }
+
+    @Override
+    public List<LapisTabOption> getChildren(CommandSender sender) {
+        return null;
+    }
+}
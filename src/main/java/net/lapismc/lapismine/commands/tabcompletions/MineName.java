@@ -4,7 +4,6 @@ import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
 import net.lapismc.lapismine.LapisMine;
 import net.lapismc.lapismine.commands.tabcompletions.composition.Composition;
 import net.lapismc.lapismine.commands.tabcompletions.config.Config;
-import net.lapismc.lapismine.mines.Mine;
 import org.bukkit.command.CommandSender;
 
 import java.util.ArrayList;
@@ -22,11 +21,7 @@ public class MineName implements LapisTabOption {
 
     @Override
     public List<String> getOptions(CommandSender sender) {
-        List<String> options = new ArrayList<>();
-        for (Mine m : plugin.getMines()) {
-            options.add(m.getName());
-        }
-        return options;
+        return plugin.getMineNames();
     }
 
     @Override
@@ -20,6 +20,9 @@ public class Composition implements LapisTabOption {
         children.add(new Remove());
         children.add(new Status());
         children.add(new Fill());
+        children.add(new Layers());
+        children.add(new Layer());
+        children.add(new Mode());
         return children;
     }
 }
@@ -0,0 +1,59 @@
+package net.lapismc.lapismine.commands.tabcompletions.composition;
+
+import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Layer implements LapisTabOption {
+    @Override
+    public List<String> getOptions(CommandSender sender) {
+        return Collections.singletonList("layer");
+    }
+
+    @Override
+    public List<LapisTabOption> getChildren(CommandSender sender) {
+        return Collections.singletonList(new LapisTabOption() {
+            @Override
+            public List<String> getOptions(CommandSender sender) {
+                return Collections.singletonList("(layerName)");
+            }
+
+            @Override
+            public List<LapisTabOption> getChildren(CommandSender sender) {
+                List<LapisTabOption> children = new ArrayList<>();
+                children.add(new Keyword("create", new Keyword("(minY)", new Keyword("(maxY)", null))));
+                children.add(new Keyword("delete", null));
+                //A layer's composition is edited with the same commands as the main composition
+                children.add(new Set());
+                children.add(new Remove());
+                children.add(new Status());
+                children.add(new Fill());
+                return children;
+            }
+        });
+    }
+
+    private static class Keyword implements LapisTabOption {
+
+        private final String keyword;
+        private final Keyword next;
+
+        Keyword(String keyword, Keyword next) {
+            this.keyword = keyword;
+            this.next = next;
+        }
+
+        @Override
+        public List<String> getOptions(CommandSender sender) {
+            return Collections.singletonList(keyword);
+        }
+
+        @Override
+        public List<LapisTabOption> getChildren(CommandSender sender) {
+            return next == null ? null : Collections.singletonList(next);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.lapismc.lapismine.commands.tabcompletions.composition;
+
+import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
+import org.bukkit.command.CommandSender;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Mode implements LapisTabOption {
+    @Override
+    public List<String> getOptions(CommandSender sender) {
+        return Collections.singletonList("mode");
+    }
+
+    @Override
+    public List<LapisTabOption> getChildren(CommandSender sender) {
+        return Collections.singletonList(new LapisTabOption() {
+            @Override
+            public List<String> getOptions(CommandSender sender) {
+                return Arrays.asList("Bands", "Gradient");
+            }
+
+            @Override
+            public List<LapisTabOption> getChildren(CommandSender sender) {
+                return null;
+            }
+        });
+    }
+}
@@ -10,20 +10,26 @@ import java.util.List;
 
 public class BlockMaterial implements LapisTabOption {
 
+    //The block materials never change while the server is running, so the list is only built once
+    private static final List<String> BLOCK_MATERIALS = findBlockMaterials();
     private final boolean hasPercentChild;
 
     public BlockMaterial(boolean hasPercentChild) {
         this.hasPercentChild = hasPercentChild;
     }
 
-    @Override
-    public List<String> getOptions(CommandSender sender) {
+    private static List<String> findBlockMaterials() {
         List<String> materials = new ArrayList<>();
         for (Material m : Material.values()) {
             if (m.isBlock())
                 materials.add(m.name());
         }
-        return materials;
+        return Collections.unmodifiableList(materials);
+    }
+
+    @Override
+    public List<String> getOptions(CommandSender sender) {
+        return BLOCK_MATERIALS;
     }
 
     @Override
@@ -20,6 +20,9 @@ public class Config implements LapisTabOption {
         children.add(new ResetFrequency());
         children.add(new ReplaceOnlyAir());
         children.add(new Teleport());
+        children.add(new DiffReset());
+        children.add(new HashedGeneration());
+        children.add(new Template());
         return children;
     }
 }
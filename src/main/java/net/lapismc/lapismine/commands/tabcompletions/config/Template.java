@@ -0,0 +1,32 @@
+package net.lapismc.lapismine.commands.tabcompletions.config;
+
+import net.lapismc.lapiscore.commands.tabcomplete.LapisTabOption;
+import org.bukkit.command.CommandSender;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Template implements LapisTabOption {
+
+    @Override
+    public List<String> getOptions(CommandSender sender) {
+        return Collections.singletonList("template");
+    }
+
+    @Override
+    public List<LapisTabOption> getChildren(CommandSender sender) {
+        return Collections.singletonList(new LapisTabOption() {
+            @Override
+            public List<String> getOptions(CommandSender sender) {
+                return Arrays.asList("true", "false", "regenerate", "(Resets)");
+            }
+
+            @Override
+            public List<LapisTabOption> getChildren(CommandSender sender) {
+                return null;
+            }
+        });
+    }
+
+}
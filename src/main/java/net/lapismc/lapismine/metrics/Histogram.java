@@ -0,0 +1,137 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.metrics;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed bucket bounds that can be recorded to from any thread without locking
+ * Percentiles are estimated as the upper bound of the bucket they fall in
+ */
+public class Histogram {
+
+    /**
+     * Bucket bounds suited to durations in milliseconds
+     */
+    public static final double[] MILLIS_BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+    /**
+     * Bucket bounds suited to durations in ticks
+     */
+    public static final double[] TICK_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 600, 1200, 2400, 6000};
+    private final double[] bounds;
+    //One more bucket than bounds, the last bucket holds everything above the highest bound
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, 0);
+
+    /**
+     * @param bounds The upper bound of each bucket, in ascending order
+     */
+    public Histogram(double[] bounds) {
+        this.bounds = bounds;
+        buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a value
+     *
+     * @param value The value to record
+     */
+    public void record(double value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    public double getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of all recorded values
+     *
+     * @return the mean, 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long c = getCount();
+        return c == 0 ? 0 : getSum() / c;
+    }
+
+    /**
+     * Estimate a percentile of the recorded values
+     *
+     * @param percentile The percentile between 0 and 1
+     * @return the upper bound of the bucket the percentile falls in, or the max for the overflow bucket
+     */
+    public double getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank)
+                return Math.min(bounds[i], getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Get the bucket bounds
+     *
+     * @return the upper bound of each bucket, this must not be modified
+     */
+    public double[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Get the number of values at or below each bound, in the cumulative form Prometheus expects
+     *
+     * @return a count for each bound, followed by the total count
+     */
+    public long[] getCumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long running = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            running += buckets[i].sum();
+            counts[i] = running;
+        }
+        return counts;
+    }
+
+}
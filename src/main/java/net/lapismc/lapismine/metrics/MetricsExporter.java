@@ -0,0 +1,153 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.metrics;
+
+import net.lapismc.lapismine.LapisMine;
+import net.lapismc.lapismine.scheduler.SchedulerStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Periodically writes the reset metrics to a file in the plugin folder so they can be collected and plotted
+ * Prometheus format replaces metrics.prom each time, for a node exporter textfile collector or similar.
+ * JSON format appends one line to metrics.jsonl each time.
+ */
+public class MetricsExporter {
+
+    private final LapisMine plugin;
+    private final boolean json;
+
+    public MetricsExporter(LapisMine plugin) {
+        this.plugin = plugin;
+        json = plugin.getConfig().getString("Metrics.Format", "Prometheus").equalsIgnoreCase("JSON");
+        long interval = plugin.getConfig().getLong("Metrics.ExportInterval", 60) * 20;
+        if (interval <= 0)
+            return;
+        plugin.tasks.addTask(plugin.tasks.runTaskTimer(this::export, interval, interval, true));
+    }
+
+    private void export() {
+        SchedulerStats stats = plugin.scheduler.getStats();
+        try {
+            if (json) {
+                File f = new File(plugin.getDataFolder(), "metrics.jsonl");
+                Files.writeString(f.toPath(), toJson(stats) + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else {
+                File f = new File(plugin.getDataFolder(), "metrics.prom");
+                File temp = new File(plugin.getDataFolder(), "metrics.prom.tmp");
+                Files.writeString(temp.toPath(), toPrometheus(stats), StandardCharsets.UTF_8);
+                //Scrapers must never see half a file
+                Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to export metrics: " + e.getMessage());
+        }
+    }
+
+    private String toPrometheus(SchedulerStats stats) {
+        StringBuilder sb = new StringBuilder();
+        Map<String, MineMetrics> mines = plugin.metrics.getMines();
+        sb.append("# TYPE lapismine_resets_total counter\n");
+        mines.forEach((name, m) -> sample(sb, "lapismine_resets_total", name, m.getResets()));
+        sb.append("# TYPE lapismine_blocks_written_total counter\n");
+        mines.forEach((name, m) -> sample(sb, "lapismine_blocks_written_total", name, m.getBlocksWritten()));
+        sb.append("# TYPE lapismine_write_seconds_total counter\n");
+        mines.forEach((name, m) -> sample(sb, "lapismine_write_seconds_total", name, m.getWriteMillis() / 1000));
+        sb.append("# TYPE lapismine_plan_seconds_total counter\n");
+        mines.forEach((name, m) -> sample(sb, "lapismine_plan_seconds_total", name, m.getPlanMillis() / 1000));
+        sb.append("# TYPE lapismine_reset_duration_milliseconds histogram\n");
+        mines.forEach((name, m) -> histogram(sb, "lapismine_reset_duration_milliseconds", name, m.getResetMillis()));
+        sb.append("# TYPE lapismine_reset_duration_ticks histogram\n");
+        mines.forEach((name, m) -> histogram(sb, "lapismine_reset_duration_ticks", name, m.getResetTicks()));
+        sb.append("# TYPE lapismine_queued_sections gauge\n");
+        sb.append("lapismine_queued_sections ").append(stats.queuedTasks()).append('\n');
+        sb.append("# TYPE lapismine_budget_milliseconds gauge\n");
+        sb.append("lapismine_budget_milliseconds ").append(format(stats.budgetMillis())).append('\n');
+        sb.append("# TYPE lapismine_budget_used_milliseconds gauge\n");
+        sb.append("lapismine_budget_used_milliseconds ").append(format(stats.usedMillis())).append('\n');
+        sb.append("# TYPE lapismine_tick_milliseconds gauge\n");
+        sb.append("lapismine_tick_milliseconds{quantile=\"0.5\"} ").append(format(stats.tickP50())).append('\n');
+        sb.append("lapismine_tick_milliseconds{quantile=\"0.95\"} ").append(format(stats.tickP95())).append('\n');
+        sb.append("lapismine_tick_milliseconds{quantile=\"1\"} ").append(format(stats.tickMax())).append('\n');
+        return sb.toString();
+    }
+
+    private void sample(StringBuilder sb, String metric, String mine, double value) {
+        sb.append(metric).append("{mine=\"").append(escape(mine)).append("\"} ").append(format(value)).append('\n');
+    }
+
+    private void histogram(StringBuilder sb, String metric, String mine, Histogram histogram) {
+        double[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCumulativeCounts();
+        String label = "mine=\"" + escape(mine) + "\"";
+        for (int i = 0; i < counts.length; i++) {
+            String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+            sb.append(metric).append("_bucket{").append(label).append(",le=\"").append(le).append("\"} ")
+                    .append(counts[i]).append('\n');
+        }
+        sb.append(metric).append("_sum{").append(label).append("} ").append(format(histogram.getSum())).append('\n');
+        sb.append(metric).append("_count{").append(label).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    private String toJson(SchedulerStats stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"time\":").append(System.currentTimeMillis());
+        sb.append(",\"scheduler\":{\"queuedSections\":").append(stats.queuedTasks())
+                .append(",\"activeRegions\":").append(stats.activeRegions())
+                .append(",\"budgetMillis\":").append(format(stats.budgetMillis()))
+                .append(",\"usedMillis\":").append(format(stats.usedMillis()))
+                .append(",\"tickP50\":").append(format(stats.tickP50()))
+                .append(",\"tickP95\":").append(format(stats.tickP95()))
+                .append(",\"tickMax\":").append(format(stats.tickMax())).append('}');
+        sb.append(",\"mines\":{");
+        boolean first = true;
+        for (Map.Entry<String, MineMetrics> entry : plugin.metrics.getMines().entrySet()) {
+            MineMetrics m = entry.getValue();
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append('"').append(escape(entry.getKey())).append("\":{")
+                    .append("\"resets\":").append(m.getResets())
+                    .append(",\"blocksWritten\":").append(m.getBlocksWritten())
+                    .append(",\"blocksPerSecond\":").append(format(m.getBlocksPerSecond()))
+                    .append(",\"resetMillisMean\":").append(format(m.getResetMillis().getMean()))
+                    .append(",\"resetMillisP95\":").append(format(m.getResetMillis().getPercentile(0.95)))
+                    .append(",\"resetTicksMean\":").append(format(m.getResetTicks().getMean()))
+                    .append(",\"planMillis\":").append(format(m.getPlanMillis()))
+                    .append(",\"writeMillis\":").append(format(m.getWriteMillis())).append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms for the resets of one mine, or of every mine combined
+ */
+public class MineMetrics {
+
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder planNanos = new LongAdder();
+    private final Histogram resetMillis = new Histogram(Histogram.MILLIS_BUCKETS);
+    private final Histogram resetTicks = new Histogram(Histogram.TICK_BUCKETS);
+    private final Histogram planMillis = new Histogram(Histogram.MILLIS_BUCKETS);
+
+    void recordReset(long wallNanos, long ticks, long blocks, long nanosWriting) {
+        resets.increment();
+        blocksWritten.add(blocks);
+        writeNanos.add(nanosWriting);
+        resetMillis.record(wallNanos / 1E6);
+        resetTicks.record(ticks);
+    }
+
+    void recordPlan(long nanos) {
+        planNanos.add(nanos);
+        planMillis.record(nanos / 1E6);
+    }
+
+    /**
+     * @return the number of resets that have finished writing their blocks
+     */
+    public long getResets() {
+        return resets.sum();
+    }
+
+    /**
+     * @return the total number of blocks written by resets
+     */
+    public long getBlocksWritten() {
+        return blocksWritten.sum();
+    }
+
+    /**
+     * @return the total time spent writing blocks, in milliseconds
+     */
+    public double getWriteMillis() {
+        return writeNanos.sum() / 1E6;
+    }
+
+    /**
+     * @return the total time spent sampling the composition to plan resets, in milliseconds
+     */
+    public double getPlanMillis() {
+        return planNanos.sum() / 1E6;
+    }
+
+    /**
+     * The rate blocks are written at while the scheduler is working on them, ignoring time spent waiting between ticks
+     *
+     * @return the number of blocks written per second of write time
+     */
+    public double getBlocksPerSecond() {
+        long nanos = writeNanos.sum();
+        return nanos == 0 ? 0 : blocksWritten.sum() / (nanos / 1E9);
+    }
+
+    /**
+     * @return the time from the start of each reset until its last block was written
+     */
+    public Histogram getResetMillis() {
+        return resetMillis;
+    }
+
+    /**
+     * @return the number of ticks from the start of each reset until its last block was written
+     */
+    public Histogram getResetTicks() {
+        return resetTicks;
+    }
+
+    /**
+     * @return the time taken to plan each reset
+     */
+    public Histogram getPlanHistogram() {
+        return planMillis;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects reset metrics for every mine, as well as a combined total
+ */
+public class ResetMetrics {
+
+    private final MineMetrics global = new MineMetrics();
+    private final Map<String, MineMetrics> mines = new ConcurrentHashMap<>();
+    private final LongSupplier tickClock;
+
+    /**
+     * @param tickClock Supplies a counter that increases by one every server tick, used to measure resets in ticks
+     */
+    public ResetMetrics(LongSupplier tickClock) {
+        this.tickClock = tickClock;
+    }
+
+    /**
+     * Start tracking a reset
+     *
+     * @param mineName The name of the mine being reset
+     * @param sections The number of sections that were queued for the reset
+     * @return a tracker that each section should report to once it is written
+     */
+    public ResetTracker startReset(String mineName, int sections) {
+        return new ResetTracker(this, getMine(mineName), sections);
+    }
+
+    /**
+     * Record the time taken to plan a reset, this is the time spent sampling the composition
+     *
+     * @param mineName The name of the mine that was planned
+     * @param nanos    The time taken
+     */
+    public void recordPlan(String mineName, long nanos) {
+        getMine(mineName).recordPlan(nanos);
+        global.recordPlan(nanos);
+    }
+
+    /**
+     * Get the metrics for a mine, they are created the first time they are needed
+     *
+     * @param mineName The name of the mine
+     * @return the metrics for the mine
+     */
+    public MineMetrics getMine(String mineName) {
+        return mines.computeIfAbsent(mineName.toLowerCase(), k -> new MineMetrics());
+    }
+
+    /**
+     * Stop tracking a mine, used when it is deleted
+     *
+     * @param mineName The name of the mine
+     */
+    public void removeMine(String mineName) {
+        mines.remove(mineName.toLowerCase());
+    }
+
+    /**
+     * @return the metrics for every mine, keyed by lower case mine name
+     */
+    public Map<String, MineMetrics> getMines() {
+        return Collections.unmodifiableMap(mines);
+    }
+
+    /**
+     * @return the metrics for all mines combined
+     */
+    public MineMetrics getGlobal() {
+        return global;
+    }
+
+    long getCurrentTick() {
+        return tickClock.getAsLong();
+    }
+
+}
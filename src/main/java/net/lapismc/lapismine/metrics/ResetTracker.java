@@ -0,0 +1,65 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follows a single reset from when its sections are queued until the last one is written
+ */
+public class ResetTracker {
+
+    private final ResetMetrics metrics;
+    private final MineMetrics mine;
+    private final long startNanos;
+    private final long startTick;
+    private final AtomicInteger remaining;
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+
+    ResetTracker(ResetMetrics metrics, MineMetrics mine, int sections) {
+        this.metrics = metrics;
+        this.mine = mine;
+        startNanos = System.nanoTime();
+        startTick = metrics.getCurrentTick();
+        remaining = new AtomicInteger(sections);
+        if (sections == 0)
+            finish();
+    }
+
+    /**
+     * Record that one of this reset's sections has been written
+     *
+     * @param blockCount The number of blocks the section wrote
+     * @param nanos      The time it took to write them
+     */
+    public void sectionComplete(int blockCount, long nanos) {
+        blocks.add(blockCount);
+        writeNanos.add(nanos);
+        if (remaining.decrementAndGet() == 0)
+            finish();
+    }
+
+    private void finish() {
+        long wallNanos = System.nanoTime() - startNanos;
+        long ticks = metrics.getCurrentTick() - startTick;
+        mine.recordReset(wallNanos, ticks, blocks.sum(), writeNanos.sum());
+        metrics.getGlobal().recordReset(wallNanos, ticks, blocks.sum(), writeNanos.sum());
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.ChunkSnapshot;
+
+import java.util.*;
+
+/**
+ * Finds the air blocks in a mine from chunk snapshots, so replace only air resets don't read blocks on the server thread
+ */
+final class AirMask {
+
+    private final BitSet blocks;
+    //Chunks that weren't loaded when the snapshots were taken, their blocks still need checking as they are written
+    private final Set<Long> unscannedChunks;
+
+    private AirMask(BitSet blocks, Set<Long> unscannedChunks) {
+        this.blocks = blocks;
+        this.unscannedChunks = unscannedChunks;
+    }
+
+    /**
+     * Get the blocks that may be written, see {@link #scan(MineBounds, List, BitSet)}
+     *
+     * @return the mask, indexed by {@link MineBounds#indexOf(int, int, int)}
+     */
+    BitSet getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Check if a chunk was scanned, the blocks of a scanned chunk in the mask are known to be air
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return true if the chunk had a snapshot, false if its blocks must be checked as they are written
+     */
+    boolean isScanned(int chunkX, int chunkZ) {
+        return !unscannedChunks.contains(chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Build a mask of the air blocks within some bounds
+     * Chunks without a snapshot weren't loaded, every considered block in them is kept for the writer to check itself
+     *
+     * @param bounds    The bounds to scan, the mask is indexed by {@link MineBounds#indexOf(int, int, int)}
+     * @param snapshots A snapshot of the chunks the bounds cover that were loaded
+     * @param mask      The blocks to consider, null for every block
+     * @return a mask with only the considered blocks that are air, or that are in a chunk that wasn't captured
+     */
+    static AirMask scan(MineBounds bounds, List<ChunkSnapshot> snapshots, BitSet mask) {
+        Map<Long, ChunkSnapshot> byChunk = new HashMap<>();
+        for (ChunkSnapshot snapshot : snapshots) {
+            byChunk.put(chunkKey(snapshot.getX(), snapshot.getZ()), snapshot);
+        }
+        BitSet air = new BitSet(bounds.getVolume());
+        Set<Long> unscanned = new HashSet<>();
+        for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+            for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                ChunkSnapshot snapshot = byChunk.get(chunkKey(chunkX, chunkZ));
+                if (snapshot == null)
+                    unscanned.add(chunkKey(chunkX, chunkZ));
+                //Only the part of the chunk that is inside the mine is scanned
+                int xStart = Math.max(bounds.xMin, chunkX << 4);
+                int xEnd = Math.min(bounds.xMax, (chunkX << 4) + 15);
+                int zStart = Math.max(bounds.zMin, chunkZ << 4);
+                int zEnd = Math.min(bounds.zMax, (chunkZ << 4) + 15);
+                for (int y = bounds.yMin; y <= bounds.yMax; y++) {
+                    for (int z = zStart; z <= zEnd; z++) {
+                        for (int x = xStart; x <= xEnd; x++) {
+                            int index = bounds.indexOf(x, y, z);
+                            if ((mask == null || mask.get(index))
+                                    && (snapshot == null || snapshot.getBlockType(x & 15, y, z & 15).isAir()))
+                                air.set(index);
+                        }
+                    }
+                }
+            }
+        }
+        return new AirMask(air, unscanned);
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Material;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * A compiled composition that picks materials in constant time using Vose's alias method
+ * Once built it is immutable, so it can be shared between threads
+ */
+class AliasSampler {
+
+    private final Material[] palette;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Build the alias table for the given materials
+     *
+     * @param materials The materials that can be picked, this array becomes the palette
+     * @param weights   The weight of each material, these do not need to add up to 1
+     */
+    AliasSampler(Material[] materials, double[] weights) {
+        int n = materials.length;
+        if (n == 0 || n != weights.length)
+            throw new IllegalArgumentException("An alias table needs one weight for each of at least one material");
+        palette = materials.clone();
+        probability = new double[n];
+        alias = new int[n];
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        //Scale the weights so that the average column is exactly 1
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+        //Pair each under-full column with an over-full one that tops it up
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1)
+                small[smallCount++] = more;
+            else
+                large[largeCount++] = more;
+        }
+        //Anything left over is full, only rounding errors can leave entries here
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            probability[i] = 1;
+            alias[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            probability[i] = 1;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * Pick the palette index of the next material
+     *
+     * @param random The source of randomness to use
+     * @return an index into {@link #getPalette()}
+     */
+    int nextIndex(RandomGenerator random) {
+        int column = random.nextInt(palette.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * Pick a palette index using the bits of a hash instead of a random generator
+     * The high 32 bits pick the column and the low 32 bits decide between it and its alias
+     *
+     * @param hash A well mixed 64 bit value, such as one from {@link CoordinateHash}
+     * @return an index into {@link #getPalette()}
+     */
+    int indexOf(long hash) {
+        int column = (int) (((hash >>> 32) * palette.length) >>> 32);
+        return (hash & 0xFFFFFFFFL) * 0x1.0p-32 < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * Pick the next material
+     *
+     * @param random The source of randomness to use
+     * @return the picked material
+     */
+    Material next(RandomGenerator random) {
+        return palette[nextIndex(random)];
+    }
+
+    /**
+     * Get the materials this sampler picks from, in palette index order
+     *
+     * @return the palette, this must not be modified
+     */
+    Material[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Draw a number of samples and count how often each material came up
+     * This is used to compare the distribution against the expected composition
+     *
+     * @param samples The number of materials to pick
+     * @param random  The source of randomness to use
+     * @return a map of materials to the number of times they were picked
+     */
+    Map<Material, Integer> getDistribution(int samples, RandomGenerator random) {
+        int[] counts = new int[palette.length];
+        for (int i = 0; i < samples; i++) {
+            counts[nextIndex(random)]++;
+        }
+        Map<Material, Integer> distribution = new EnumMap<>(Material.class);
+        for (int i = 0; i < palette.length; i++) {
+            distribution.merge(palette[i], counts[i], Integer::sum);
+        }
+        return distribution;
+    }
+
+}
@@ -20,6 +20,7 @@ import net.lapismc.lapismine.LapisMine;
 import org.bukkit.Material;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Stores the composition of the mine and can provide a block stream to regen the mine
@@ -28,7 +29,9 @@ public class Composition {
 
     private final LapisMine plugin;
     private final HashMap<Material, Double> materialMap;
-    private RandomCollection<Material> compiledMaterials;
+    private volatile AliasSampler compiledMaterials;
+    private volatile int version = 0;
+    private Runnable changeListener;
 
     /**
      * This initializer should be used when it is a new composition that is yet to be built
@@ -46,6 +49,7 @@ public class Composition {
      *
      * @param plugin    The LapisMine main class
      * @param materials The Composition array list to be parsed
+     * @throws IllegalArgumentException if an entry isn't a known material and a percentage
      */
     public Composition(LapisMine plugin, List<String> materials) {
         this.plugin = plugin;
@@ -53,10 +57,19 @@ public class Composition {
         for (String s : materials) {
             String[] data = s.split(":");
             Material mat = Material.getMaterial(data[0]);
-            Double percentage = Double.valueOf(data[1]);
+            if (mat == null || data.length != 2)
+                throw new IllegalArgumentException("Invalid composition entry \"" + s + "\"");
+            Double percentage;
+            try {
+                percentage = Double.valueOf(data[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid composition entry \"" + s + "\"");
+            }
             materialMap.put(mat, percentage);
         }
-        compileMaterials();
+        //The alias table is compiled the first time a material is needed, so that an incomplete
+        //composition isn't filled while it is being loaded
+        compiledMaterials = null;
     }
 
     /**
@@ -66,13 +79,50 @@ public class Composition {
      * @return the resulting material
      */
     public Material getNextMaterial() {
-        if (getTotalPercentage() != 1)
-            fillMaterial(plugin.fillMaterial);
+        return getSampler().next(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Get the compiled alias table, compiling it first if the composition has changed
+     *
+     * @return the current sampler for this composition
+     */
+    AliasSampler getSampler() {
+        AliasSampler sampler = compiledMaterials;
+        if (sampler == null)
+            sampler = compileMaterials();
+        return sampler;
+    }
+
+    /**
+     * Get the version of this composition, this increases every time a material is changed
+     * It is used to tell if something built from this composition is out of date
+     *
+     * @return the current version number
+     */
+    public int getVersion() {
+        return version;
+    }
 
-        if (compiledMaterials == null)
-            compileMaterials();
+    /**
+     * Get a hash of the materials and percentages in this composition
+     * Unlike the version, this is the same across restarts, so it can be stored with data built from the composition
+     *
+     * @return a hash that changes when the composition changes
+     */
+    public int getFingerprint() {
+        List<String> entries = parseToStringList();
+        Collections.sort(entries);
+        return entries.hashCode();
+    }
 
-        return compiledMaterials.next();
+    /**
+     * Set a listener that is run every time the composition changes
+     *
+     * @param listener The listener to run, or null to remove it
+     */
+    void setChangeListener(Runnable listener) {
+        this.changeListener = listener;
     }
 
     /**
@@ -100,7 +150,7 @@ public class Composition {
                 materialMap.remove(plugin.fillMaterial);
                 materialMap.put(mat, percentage);
                 fillMaterial(plugin.fillMaterial);
-                compiledMaterials = null;
+                changed();
                 return true;
             } else {
                 //Cannot fit even with a reduction of fill
@@ -108,7 +158,7 @@ public class Composition {
             }
         } else {
             materialMap.put(mat, percentage);
-            compiledMaterials = null;
+            changed();
             return true;
         }
     }
@@ -123,7 +173,22 @@ public class Composition {
         if (!materialMap.containsKey(mat))
             return false;
         materialMap.remove(mat);
-        compiledMaterials = null;
+        changed();
+        return true;
+    }
+
+    /**
+     * Replace every material in this composition with those of another, used when a mine file is edited
+     *
+     * @param other The composition to copy the materials from
+     * @return true if the materials were different and have been replaced, false if they were already the same
+     */
+    public boolean replaceMaterials(Composition other) {
+        if (materialMap.equals(other.materialMap))
+            return false;
+        materialMap.clear();
+        materialMap.putAll(other.materialMap);
+        changed();
         return true;
     }
 
@@ -182,15 +247,60 @@ public class Composition {
         return d;
     }
 
+    private void changed() {
+        compiledMaterials = null;
+        version++;
+        if (changeListener != null)
+            changeListener.run();
+    }
+
     /**
-     * Takes out own materials list and copies it into the RandomCollection class for later use
+     * Compiles our materials into an alias table so that each block can be picked in constant time
+     * If percentages don't total to 1, the remaining space is filled with the fill material first
+     *
+     * @return the newly compiled sampler
      */
-    private void compileMaterials() {
-        compiledMaterials = new RandomCollection<>();
-        for (Material mat : materialMap.keySet()) {
-            Double percentage = materialMap.get(mat);
-            compiledMaterials.add(percentage, mat);
+    private synchronized AliasSampler compileMaterials() {
+        if (getTotalPercentage() != 1)
+            fillMaterial(plugin.fillMaterial);
+        Material[] materials = new Material[materialMap.size()];
+        double[] weights = new double[materialMap.size()];
+        int i = 0;
+        for (Map.Entry<Material, Double> entry : materialMap.entrySet()) {
+            materials[i] = entry.getKey();
+            weights[i] = entry.getValue();
+            i++;
         }
+        AliasSampler sampler = new AliasSampler(materials, weights);
+        compiledMaterials = sampler;
+        return sampler;
+    }
+
+    /**
+     * Sample the compiled composition and count how often each material is picked
+     *
+     * @param samples The number of materials to pick
+     * @param random  The random to sample with, pass a seeded random for repeatable results
+     * @return a map of materials to the number of times they were picked
+     */
+    Map<Material, Integer> getDistribution(int samples, Random random) {
+        return getSampler().getDistribution(samples, random);
+    }
+
+    /**
+     * Sample the composition using the original TreeMap based sampler
+     * This is kept so the alias table can be checked against it
+     *
+     * @param samples The number of materials to pick
+     * @param random  The random to sample with, pass a seeded random for repeatable results
+     * @return a map of materials to the number of times they were picked
+     */
+    Map<Material, Integer> getLegacyDistribution(int samples, Random random) {
+        RandomCollection<Material> collection = new RandomCollection<>(random);
+        for (Map.Entry<Material, Double> entry : materialMap.entrySet()) {
+            collection.add(entry.getValue(), entry.getKey());
+        }
+        return collection.getDistribution(samples);
     }
 
     /**
@@ -219,6 +329,14 @@ public class Composition {
             double value = random.nextDouble() * total;
             return map.higherEntry(value).getValue();
         }
+
+        public Map<E, Integer> getDistribution(int samples) {
+            Map<E, Integer> distribution = new HashMap<>();
+            for (int i = 0; i < samples; i++) {
+                distribution.merge(next(), 1, Integer::sum);
+            }
+            return distribution;
+        }
     }
 
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+/**
+ * A composition that applies to a range of Y levels within a mine, so that deeper parts of a mine can be richer
+ * The rest of the mine uses the mine's main composition
+ */
+public class CompositionLayer {
+
+    private final String name;
+    private final Composition composition;
+    private int minY, maxY;
+
+    /**
+     * @param name        The name of the layer, unique within its mine
+     * @param minY        The lowest Y level of the layer
+     * @param maxY        The highest Y level of the layer
+     * @param composition The composition for blocks within the layer
+     */
+    CompositionLayer(String name, int minY, int maxY, Composition composition) {
+        this.name = name;
+        this.composition = composition;
+        setRange(minY, maxY);
+    }
+
+    /**
+     * Get the name of this layer
+     *
+     * @return the name used for the layer in commands and the mine file
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the composition of this layer
+     *
+     * @return the composition used for blocks within this layer
+     */
+    public Composition getComposition() {
+        return composition;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Check if a Y level is within this layer
+     *
+     * @param y The Y level to check
+     * @return true if the level is inside the layer, edges included
+     */
+    public boolean contains(int y) {
+        return y >= minY && y <= maxY;
+    }
+
+    void setRange(int minY, int maxY) {
+        this.minY = Math.min(minY, maxY);
+        this.maxY = Math.max(minY, maxY);
+    }
+
+    /**
+     * How the layers of a mine are combined
+     */
+    public enum Mode {
+        /**
+         * Each layer is a band with exactly its own composition, levels outside every layer use the main composition
+         */
+        BANDS,
+        /**
+         * Layers are anchors, levels between two anchors blend from one composition to the other
+         * Levels above the top anchor or below the bottom anchor use the nearest anchor
+         */
+        GRADIENT;
+
+        /**
+         * Get a mode from its name, ignoring case
+         *
+         * @param name The name of the mode
+         * @return the mode, or null if there is no mode with that name
+         */
+        public static Mode fromName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name))
+                    return mode;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+/**
+ * Turns a block position into a random looking number that is always the same for the same inputs
+ * This is SplitMix64, the stream for a reset is seeded from the mine's seed and reset counter and each block takes
+ * the output at its packed position, so no state is shared between blocks or threads.
+ */
+final class CoordinateHash {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private CoordinateHash() {
+    }
+
+    /**
+     * Get the seed shared by every block of one reset
+     *
+     * @param mineSeed   The seed of the mine
+     * @param resetCount The number of the reset
+     * @return the seed to pass to {@link #hash(long, int, int, int)}
+     */
+    static long resetSeed(long mineSeed, long resetCount) {
+        return mix(mineSeed + mix(resetCount + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Hash a block position
+     *
+     * @param resetSeed The seed from {@link #resetSeed(long, long)}
+     * @param x         The block x coordinate
+     * @param y         The block y coordinate
+     * @param z         The block z coordinate
+     * @return 64 well mixed bits
+     */
+    static long hash(long resetSeed, int x, int y, int z) {
+        //26 bits each for x and z covers the whole world border, 12 bits covers every build height
+        long packed = (x & 0x3FFFFFFL) | ((z & 0x3FFFFFFL) << 26) | ((y & 0xFFFL) << 52);
+        return mix(resetSeed + packed * GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
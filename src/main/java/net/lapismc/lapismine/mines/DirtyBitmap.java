@@ -0,0 +1,179 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * One bit for every block in a mine, set when the block is changed by something other than a reset
+ * Bits are indexed with {@link MineBounds#indexOf(int, int, int)} so they line up with a {@link ResetPlan}
+ * The bitmap also records a fingerprint of the materials the mine was last reset with, the unmarked blocks only
+ * match the mine's settings while that fingerprint does
+ */
+public class DirtyBitmap {
+
+    private static final int MAGIC = 0x4C4D4442;
+    private static final int FORMAT_VERSION = 2;
+    private final MineBounds bounds;
+    private final long[] words;
+    private int fingerprint;
+
+    /**
+     * Create a clean bitmap for the given bounds
+     *
+     * @param bounds The bounds of the mine
+     */
+    public DirtyBitmap(MineBounds bounds) {
+        this.bounds = bounds;
+        words = new long[(bounds.getVolume() + 63) >>> 6];
+    }
+
+    /**
+     * Mark a block as changed, positions outside the bounds are ignored
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     */
+    public synchronized void mark(int x, int y, int z) {
+        if (!bounds.contains(x, y, z))
+            return;
+        int index = bounds.indexOf(x, y, z);
+        words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Get the changed blocks and clear the bitmap, ready for the next cycle
+     *
+     * @return a copy of the dirty bits as they were before clearing
+     */
+    public synchronized BitSet take() {
+        BitSet dirty = BitSet.valueOf(words);
+        Arrays.fill(words, 0);
+        return dirty;
+    }
+
+    /**
+     * Mark every block as clean
+     */
+    public synchronized void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Count the changed blocks
+     *
+     * @return the number of blocks marked as changed
+     */
+    public synchronized int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Get the fingerprint of the materials the mine was last reset with
+     *
+     * @return the fingerprint set with {@link #setFingerprint(int)}, 0 if it was never set
+     */
+    public synchronized int getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Record the fingerprint of the materials the mine has just been reset with
+     *
+     * @param fingerprint A hash of everything that decides which materials a reset places
+     */
+    public synchronized void setFingerprint(int fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Get the bounds this bitmap covers
+     *
+     * @return the bounds the bitmap was created for
+     */
+    public MineBounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Write the bitmap to a file, the file is replaced in one step so a crash can't leave half a bitmap behind
+     *
+     * @param f The file to write to
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void save(File f) throws IOException {
+        File temp = new File(f.getParentFile(), f.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeBounds(out);
+            out.writeInt(fingerprint);
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a bitmap that was written by {@link #save(File)}
+     *
+     * @param f      The file to read
+     * @param bounds The current bounds of the mine
+     * @return the loaded bitmap, or null if it was saved for different bounds or by an older version
+     * @throws IOException if the file can't be read or isn't a bitmap
+     */
+    public static DirtyBitmap load(File f, MineBounds bounds) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(f.getName() + " is not a dirty block bitmap");
+            //Older bitmaps have no fingerprint, so there is no way to tell if they are still valid
+            if (in.readInt() != FORMAT_VERSION)
+                return null;
+            DirtyBitmap bitmap = new DirtyBitmap(bounds);
+            int[] saved = {in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+            int[] current = {bounds.xMin, bounds.yMin, bounds.zMin, bounds.xMax, bounds.yMax, bounds.zMax};
+            bitmap.fingerprint = in.readInt();
+            if (!Arrays.equals(saved, current) || in.readInt() != bitmap.words.length)
+                return null;
+            for (int i = 0; i < bitmap.words.length; i++) {
+                bitmap.words[i] = in.readLong();
+            }
+            return bitmap;
+        }
+    }
+
+    private void writeBounds(DataOutputStream out) throws IOException {
+        out.writeInt(bounds.xMin);
+        out.writeInt(bounds.yMin);
+        out.writeInt(bounds.zMin);
+        out.writeInt(bounds.xMax);
+        out.writeInt(bounds.yMax);
+        out.writeInt(bounds.zMax);
+    }
+
+}
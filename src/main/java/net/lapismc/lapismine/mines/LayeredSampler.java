@@ -0,0 +1,154 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Material;
+
+import java.util.*;
+
+/**
+ * The compiled composition of a whole mine, holding a sampler for every Y level
+ * Every level in the same band shares one sampler, so each distinct composition is only compiled once
+ * All samplers share one palette, which lets a plan store the index of any level's material
+ */
+class LayeredSampler {
+
+    private final Material[] palette;
+    private final AliasSampler[] levels;
+    private final int yMin;
+
+    private LayeredSampler(Material[] palette, AliasSampler[] levels, int yMin) {
+        this.palette = palette;
+        this.levels = levels;
+        this.yMin = yMin;
+    }
+
+    /**
+     * Use one sampler for every level
+     *
+     * @param sampler The sampler to pick every block from
+     * @return a sampler without layers
+     */
+    static LayeredSampler flat(AliasSampler sampler) {
+        return new LayeredSampler(sampler.getPalette(), new AliasSampler[]{sampler}, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Compile the main composition and layers of a mine for the levels within its bounds
+     * This compiles the compositions, so it must be run on the server thread
+     *
+     * @param bounds The bounds of the mine
+     * @param main   The composition used outside the layers
+     * @param layers The layers of the mine
+     * @param mode   How the layers are combined
+     * @return the compiled sampler
+     */
+    static LayeredSampler compile(MineBounds bounds, Composition main, List<CompositionLayer> layers,
+                                  CompositionLayer.Mode mode) {
+        if (layers.isEmpty())
+            return flat(main.getSampler());
+        //Compiling first fills any compositions that don't add up to 1, so the maps below are complete
+        Set<Material> materials = new LinkedHashSet<>(Arrays.asList(main.getSampler().getPalette()));
+        for (CompositionLayer layer : layers) {
+            materials.addAll(Arrays.asList(layer.getComposition().getSampler().getPalette()));
+        }
+        Material[] palette = materials.toArray(new Material[0]);
+        Map<Composition, AliasSampler> compiled = new HashMap<>();
+        AliasSampler[] levels = new AliasSampler[bounds.yMax - bounds.yMin + 1];
+        List<CompositionLayer> anchors = new ArrayList<>(layers);
+        anchors.sort(Comparator.comparingInt(CompositionLayer::getMinY));
+        for (int y = bounds.yMin; y <= bounds.yMax; y++) {
+            CompositionLayer layer = findLayer(layers, y);
+            Composition composition;
+            if (layer != null)
+                composition = layer.getComposition();
+            else if (mode == CompositionLayer.Mode.BANDS)
+                composition = main;
+            else if (y < anchors.get(0).getMinY())
+                composition = anchors.get(0).getComposition();
+            else if (y > anchors.get(anchors.size() - 1).getMaxY())
+                composition = anchors.get(anchors.size() - 1).getComposition();
+            else {
+                levels[y - bounds.yMin] = blend(palette, anchors, y);
+                continue;
+            }
+            levels[y - bounds.yMin] = compiled.computeIfAbsent(composition,
+                    c -> new AliasSampler(palette, weigh(palette, c)));
+        }
+        return new LayeredSampler(palette, levels, bounds.yMin);
+    }
+
+    private static CompositionLayer findLayer(List<CompositionLayer> layers, int y) {
+        //Where layers overlap the first one wins, the same order they are listed in the mine file
+        for (CompositionLayer layer : layers) {
+            if (layer.contains(y))
+                return layer;
+        }
+        return null;
+    }
+
+    /**
+     * Build a sampler for a level between two anchors, mixing their weights by how close the level is to each
+     */
+    private static AliasSampler blend(Material[] palette, List<CompositionLayer> anchors, int y) {
+        CompositionLayer below = null, above = null;
+        for (CompositionLayer anchor : anchors) {
+            if (anchor.getMaxY() < y && (below == null || anchor.getMaxY() > below.getMaxY()))
+                below = anchor;
+            else if (anchor.getMinY() > y && above == null)
+                above = anchor;
+        }
+        double t = (double) (y - below.getMaxY()) / (above.getMinY() - below.getMaxY());
+        double[] from = weigh(palette, below.getComposition());
+        double[] to = weigh(palette, above.getComposition());
+        double[] weights = new double[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            weights[i] = from[i] * (1 - t) + to[i] * t;
+        }
+        return new AliasSampler(palette, weights);
+    }
+
+    private static double[] weigh(Material[] palette, Composition composition) {
+        double[] weights = new double[palette.length];
+        Map<Material, Double> materials = composition.getMaterialMap();
+        for (int i = 0; i < palette.length; i++) {
+            weights[i] = materials.getOrDefault(palette[i], 0d);
+        }
+        return weights;
+    }
+
+    /**
+     * Get the sampler for a Y level
+     *
+     * @param y The Y level, must be within the bounds this was compiled for
+     * @return the sampler to pick blocks on that level from, its indexes are indexes into {@link #getPalette()}
+     */
+    AliasSampler forY(int y) {
+        return levels.length == 1 ? levels[0] : levels[y - yMin];
+    }
+
+    /**
+     * Get the materials every level picks from, in palette index order
+     *
+     * @return the palette, this must not be modified
+     */
+    Material[] getPalette() {
+        return palette;
+    }
+
+}
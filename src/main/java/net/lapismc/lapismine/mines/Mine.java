@@ -16,26 +16,27 @@
 
 package net.lapismc.lapismine.mines;
 
-import net.lapismc.lapiscore.utils.LapisTaskHandler;
 import net.lapismc.lapiscore.utils.LocationUtils;
 import net.lapismc.lapismine.LapisMine;
-import net.lapismc.lapismine.scheduler.BlockSetTask;
-import net.md_5.bungee.api.ChatMessageType;
-import net.md_5.bungee.api.chat.TextComponent;
-import org.bukkit.Bukkit;
+import net.lapismc.lapismine.metrics.ResetTracker;
+import net.lapismc.lapismine.scheduler.ResetJob;
+import net.lapismc.lapismine.scheduler.SectionSetTask;
+import net.lapismc.lapismine.scheduler.TimerWheel;
+import net.lapismc.lapismine.worldedit.WorldEditResetEngine;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.boss.BarColor;
-import org.bukkit.boss.BarStyle;
-import org.bukkit.boss.BossBar;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A class that represents a single mine instance
@@ -47,15 +48,39 @@ public class Mine {
     private final LocationUtils locationUtils = new LocationUtils();
     private final String name;
     private Location teleport, l1, l2;
+    private MineBounds bounds;
+    private final Set<Player> occupants = ConcurrentHashMap.newKeySet();
     private Material surface;
     private Integer resetFrequency;
     private long lastReset = 0;
+    private long nextReset = 0;
     private boolean replaceOnlyAir;
-    private LapisTaskHandler.LapisTask resetTask;
-    private LapisTaskHandler.LapisTask warningTask;
-    private LapisTaskHandler.LapisTask startCountdownTask;
-    private LapisTaskHandler.LapisTask updateCountdownTask;
-    private BossBar countdownBossBar;
+    private int blocksPerTick = 0;
+    private final List<CompositionLayer> layers = new ArrayList<>();
+    private CompositionLayer.Mode layerMode = CompositionLayer.Mode.BANDS;
+    //Counts changes to the layers themselves, changes to the materials of a layer are counted by its composition
+    private int layoutVersion = 0;
+    private LayeredSampler compiledSampler;
+    private int compiledVersion;
+    private MineBounds compiledBounds;
+    private long seed;
+    private long resetCount = 0;
+    private boolean hashedGeneration = false;
+    private volatile boolean diffReset;
+    private volatile DirtyBitmap dirtyBlocks;
+    private boolean fullResetRequired = true;
+    private ResetTemplate template;
+    private ResetJournal journal;
+    //Created the first time a reset is scheduled
+    private TimerWheel.Timer resetTimer;
+    private TimerWheel.Timer planTimer;
+    private CompletableFuture<ResetPlan> nextPlan;
+    private boolean planRefreshPending = false;
+    //The last fill handed to FastAsyncWorldEdit, the next one waits for it so that they are written in order
+    private CompletableFuture<?> worldEditFill = CompletableFuture.completedFuture(null);
+    //The last replace only air reset waiting on its air scan, the next one waits for it so that they are queued in order
+    private CompletableFuture<?> airScan = CompletableFuture.completedFuture(null);
+    private boolean shutdown = false;
 
     /**
      * This initializer should be used when a mine is being created by code
@@ -78,10 +103,13 @@ public class Mine {
                 l1.getY() + 2, (l1.getZ() + l2.getZ()) / 2);
         this.l1 = l1;
         this.l2 = l2;
+        bounds = new MineBounds(l1, l2);
         this.composition = composition;
+        composition.setChangeListener(this::invalidatePlan);
         this.surface = surface;
         this.resetFrequency = resetFrequency;
         this.replaceOnlyAir = replaceOnlyAir;
+        seed = ThreadLocalRandom.current().nextLong();
         restartResetTimer();
     }
 
@@ -92,17 +120,53 @@ public class Mine {
      * @param config The config file to load from
      */
     public Mine(LapisMine plugin, YamlConfiguration config) {
+        this(plugin, config, true);
+    }
+
+    /**
+     * This initializer should be used when loading from a mines.yml file
+     *
+     * @param plugin      The LapisMines plugin instance
+     * @param config      The config file to load from
+     * @param startTimers false to leave scheduling the first reset to the caller, e.g. when loading many mines at once
+     * @throws IllegalArgumentException if a required value is missing or invalid
+     */
+    public Mine(LapisMine plugin, YamlConfiguration config, boolean startTimers) {
         this.plugin = plugin;
         name = config.getString("Name");
+        if (name == null)
+            throw new IllegalArgumentException("Name is missing");
         teleport = locationUtils.parseStringToLocation(config.getString("Locations.teleport"));
         l1 = locationUtils.parseStringToLocation(config.getString("Locations.l1"));
         l2 = locationUtils.parseStringToLocation(config.getString("Locations.l2"));
+        if (l1 == null || l2 == null)
+            throw new IllegalArgumentException("Locations.l1 and Locations.l2 must both be set");
+        bounds = new MineBounds(l1, l2);
         composition = new Composition(plugin, config.getStringList("Composition"));
+        composition.setChangeListener(this::invalidatePlan);
+        layerMode = parseLayerMode(config);
+        for (CompositionLayer layer : parseLayers(config)) {
+            layer.getComposition().setChangeListener(this::invalidatePlan);
+            layers.add(layer);
+        }
         surface = Material.getMaterial(config.getString("Surface", ""));
         resetFrequency = config.getInt("ResetFrequency");
         lastReset = config.getLong("LastReset");
         replaceOnlyAir = config.getBoolean("ReplaceOnlyAir");
-        restartResetTimer();
+        blocksPerTick = config.getInt("BlocksPerTick");
+        diffReset = config.getBoolean("DiffReset");
+        //Mines from before hashed generation existed are given a seed the first time they load
+        seed = config.contains("Seed") ? config.getLong("Seed") : ThreadLocalRandom.current().nextLong();
+        resetCount = config.getLong("ResetCount");
+        hashedGeneration = config.getBoolean("HashedGeneration");
+        if (diffReset)
+            loadDirtyBitmap();
+        //Templates are only referenced here, the file is read the first time the mine needs a plan
+        if (config.isConfigurationSection("Template"))
+            template = new ResetTemplate(new File(plugin.getDataFolder(), "Mines" + File.separator
+                    + config.getString("Template.File", name + ".template")), config.getInt("Template.RegenerateEvery"));
+        if (startTimers)
+            restartResetTimer();
     }
 
     /**
@@ -119,162 +183,148 @@ public class Mine {
 
     /**
      * Cleanly cancel all tasks and get the mine ready to be destroyed
-     * This is used to reload a mine when a mines YAML file is edited
+     * This is used when a mine is deleted or replaced
      */
     public void shutdownMine() {
-        //Shut down all the tasks for the mine
-        if (resetTask != null) {
-            plugin.tasks.removeTask(resetTask);
-            resetTask.cancel();
-        }
-        if (warningTask != null) {
-            plugin.tasks.removeTask(warningTask);
-            warningTask.cancel();
-        }
-        if (startCountdownTask != null) {
-            plugin.tasks.removeTask(startCountdownTask);
-            startCountdownTask.cancel();
-        }
-        if (updateCountdownTask != null) {
-            plugin.tasks.removeTask(updateCountdownTask);
-            updateCountdownTask.cancel();
-            if (countdownBossBar != null)
-                countdownBossBar.setVisible(false);
+        //Stops a reset that is waiting on its air scan from being queued
+        shutdown = true;
+        //Shut down all the timers for the mine
+        if (resetTimer != null) {
+            resetTimer.cancel();
+            planTimer.cancel();
         }
+        //Stop any countdown that is showing and dispose of its boss bar
+        plugin.broadcaster.remove(this);
+        //Drop any plan that was prepared for the next reset
+        nextPlan = null;
     }
 
     /**
-     * Sets the reset timer back to the start if it was already running or simply starts it if it wasn't running
+     * Plans the next reset with the reset planner and schedules it, replacing any reset that was already scheduled
+     * The next reset is based on when the mine last reset, staggered against other mines with the same frequency
      */
     public void restartResetTimer() {
-        if (resetTask != null) {
-            //Remove the old task, this is so that the mine reset timer can be reset if the mine is manually reset
-            plugin.tasks.removeTask(resetTask);
-            resetTask.cancel();
-        }
-        //Make the new task and register it with LapisTaskHandler to make sure it gets shutdown on disable
-        resetTask = plugin.tasks.runTaskTimer(this::resetMine, resetFrequency * 20 * 60, resetFrequency * 20 * 60, false);
-        plugin.tasks.addTask(resetTask);
-        //Reset the warning tasks too
+        scheduleReset(plugin.resetPlanner.planNextReset(this, System.currentTimeMillis()));
+    }
+
+    /**
+     * Schedule the next reset, along with its warnings
+     *
+     * @param nextReset The system time to reset at
+     */
+    void scheduleReset(long nextReset) {
+        this.nextReset = nextReset;
         resetWarningTasks();
     }
 
     /**
-     * Cancels any running warning or countdown tasks and reschedules them
-     * This should only be run after resetting the mine so that the warnings will line up with the next reset
+     * Moves the reset and plan timers to line up with the next reset
+     * Warnings and countdowns are queued with the reset broadcaster
      */
     public void resetWarningTasks() {
-        //Cancel tasks currently scheduled
-        if (warningTask != null) {
-            plugin.tasks.removeTask(warningTask);
-            warningTask.cancel();
-        }
-        if (startCountdownTask != null) {
-            plugin.tasks.removeTask(startCountdownTask);
-            startCountdownTask.cancel();
-        }
-        if (updateCountdownTask != null) {
-            plugin.tasks.removeTask(updateCountdownTask);
-            updateCountdownTask.cancel();
-            if (countdownBossBar != null)
-                countdownBossBar.setVisible(false);
-        }
-        //If warnings are enabled, schedule that here, take the reset frequency and subtract the warning time from it
-        long resetDelay = resetFrequency * 20 * 60;
-        //Warning time is in seconds, convert to ticks and subtract from resetDelay
-        long warningDelay = resetDelay - (plugin.getConfig().getLong("WarningTime") * 20);
-        //CountdownTime is also in seconds
-        long countdownStartDelay = resetDelay - (plugin.getConfig().getLong("CountdownTime") * 20);
-        //Reset delay will be equal to warning delay if warning is disabled
-        if (warningDelay != resetDelay) {
-            warningTask = plugin.tasks.runTaskLater(this::warnMineReset, warningDelay, false);
-            plugin.tasks.addTask(warningTask);
-        }
-        //Check its enabled
-        if (countdownStartDelay != resetDelay) {
-            //Schedule the other task when the countdown should start
-            startCountdownTask = plugin.tasks.runTaskLater(this::startCountdownTask, countdownStartDelay, false);
-            plugin.tasks.addTask(startCountdownTask);
-        }
-    }
-
-    /**
-     * Warn players currently in the mine, that it wil be resetting soon
-     */
-    public void warnMineReset() {
-        String warningType = plugin.getConfig().getString("WarningType", "ActionBar");
-        String warningMessageTemplate = plugin.config.getMessage("Reset.Warning");
-        //Get the reset epoch
-        int secondsBeforeReset = plugin.getConfig().getInt("WarningTime");
-        long resetEpoch = System.currentTimeMillis() + (secondsBeforeReset * 1000L);
-        String warningMessage = warningMessageTemplate.replace("%TimeUntilReset%",
-                plugin.prettyTime.getCleanTimeDifference(resetEpoch, 1));
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            if (!isPlayerInMine(p))
-                continue;
-            if (warningType.equalsIgnoreCase("Title")) {
-                p.sendTitle(plugin.config.getMessage("Reset.WarningTitle"), warningMessage, 10, 60, 10);
-            } else if (warningType.equalsIgnoreCase("ActionBar")) {
-                p.spigot().sendMessage(ChatMessageType.ACTION_BAR, TextComponent.fromLegacy(warningMessage));
-            } else if (warningType.equalsIgnoreCase("Chat")) {
-                p.sendMessage(warningMessage);
-            }
+        if (resetTimer == null) {
+            resetTimer = plugin.timers.newTimer(this::scheduledReset);
+            planTimer = plugin.timers.newTimer(this::prepareNextPlan);
         }
+        //Rescheduling a timer replaces the time it was scheduled for before
+        resetTimer.schedule(nextReset);
+        plugin.broadcaster.schedule(this, nextReset);
+        //PlanAheadTime is in seconds, it is when the blocks for the next reset start being picked
+        long planAheadMillis = plugin.getConfig().getLong("PlanAheadTime", 30) * 1000;
+        //Plans are only prepared shortly before they are needed so that idle mines don't hold one in memory
+        if (planAheadMillis > 0) {
+            planTimer.schedule(nextReset - planAheadMillis);
+        } else {
+            planTimer.cancel();
+        }
+    }
+
+    private void scheduledReset() {
+        //A mine that can't reset still needs its next attempt planned, a successful reset plans it itself
+        if (!resetMine())
+            restartResetTimer();
     }
 
     /**
-     * Creates a repeating task to form a countdown for players currently in the mine
-     * It will only be visible to players currently in the mine each time it ticks down a second
-     * It automatically cancels itself after it reaches 0
-     */
-    public void startCountdownTask() {
-        //Get the message before text replacement
-        String messageTemplate = plugin.config.getMessage("Reset.Countdown");
-        String countdownType = plugin.getConfig().getString("CountdownType", "BossBar");
-        //Seconds remaining to be decremented
-        int totalSeconds = plugin.getConfig().getInt("CountdownTime");
-        AtomicInteger secondsRemaining = new AtomicInteger(totalSeconds);
-        countdownBossBar = Bukkit.createBossBar("", BarColor.BLUE, BarStyle.SOLID);
-        //Schedule to run every second to update the countdown
-        updateCountdownTask = plugin.tasks.runTaskTimer(() -> {
-            //PrettyTime replacement
-            long resetEpoch = System.currentTimeMillis() + (secondsRemaining.get() * 1000L);
-            String countdownMessage = messageTemplate.replace("%TimeUntilReset%",
-                    plugin.prettyTime.getCleanTimeDifference(resetEpoch, 1));
-            if (countdownType.equalsIgnoreCase("BossBar")) {
-                //Update boss bar text
-                countdownBossBar.setTitle(countdownMessage);
-                //Update progress
-                double progress = Math.min(1, Math.max(0, (double) secondsRemaining.get() / totalSeconds));
-                countdownBossBar.setProgress(progress);
-                //Make sure its visible
-                if (!countdownBossBar.isVisible())
-                    countdownBossBar.setVisible(true);
-            }
-            for (Player p : Bukkit.getOnlinePlayers()) {
-                if (isPlayerInMine(p)) {
-                    if (countdownType.equalsIgnoreCase("BossBar")) {
-                        //Check this player can see the boss bar
-                        if (!countdownBossBar.getPlayers().contains(p))
-                            countdownBossBar.addPlayer(p);
-                    } else if (countdownType.equalsIgnoreCase("ActionBar")) {
-                        p.spigot().sendMessage(ChatMessageType.ACTION_BAR, TextComponent.fromLegacy(countdownMessage));
-                    }
-                } else {
-                    if (countdownType.equalsIgnoreCase("BossBar")) {
-                        //Check if this player is shown the boss bar, if so, remove them
-                        if (countdownBossBar.getPlayers().contains(p))
-                            countdownBossBar.removePlayer(p);
-                    }
-                }
-            }
-            secondsRemaining.getAndDecrement();
-            //Cancel the task and hide the boss bar when we have gone below 0
-            if (secondsRemaining.get() < 0) {
-                countdownBossBar.setVisible(false);
-                updateCountdownTask.cancel();
-            }
-        }, 0, 20, false);
+     * Start picking the blocks for the next reset on a worker thread
+     * If the mine is reset before this completes, the reset will plan its blocks itself
+     */
+    public void prepareNextPlan() {
+        //Compiling an incomplete composition would fill it, leave that for the reset to refuse
+        if (!isCompositionValid())
+            return;
+        //Hashed plans don't generate anything up front and FAWE picks its own blocks, so there is nothing to prepare
+        if ((hashedGeneration && template == null) || (getResetEngine() != null && !diffReset)) {
+            nextPlan = null;
+            return;
+        }
+        //Everything the plan needs is captured here, on the server thread
+        MineBounds planBounds = bounds;
+        LayeredSampler sampler = getSampler();
+        int version = getCompositionVersion();
+        Material planSurface = surface;
+        ResetTemplate planTemplate = template;
+        int fingerprint = planTemplate != null ? getCompositionFingerprint() : 0;
+        nextPlan = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            ResetPlan plan = planTemplate != null
+                    ? planTemplate.getPlan(planBounds, sampler, version, fingerprint, planSurface)
+                    : ResetPlan.generate(planBounds, sampler, version, planSurface);
+            plugin.metrics.recordPlan(name, System.nanoTime() - start);
+            return plan;
+        }, plugin.workers);
+    }
+
+    /**
+     * Called when something that the reset plan depends on changes
+     * If a plan has already been prepared, a new one is started on the next tick
+     */
+    private void invalidatePlan() {
+        if (nextPlan == null || planRefreshPending)
+            return;
+        //Several changes are often made at once, this waits for them all before planning again
+        planRefreshPending = true;
+        plugin.tasks.runTask(() -> {
+            planRefreshPending = false;
+            if (nextPlan != null)
+                prepareNextPlan();
+        }, false);
+    }
+
+    /**
+     * Called when the kind of plan the mine uses changes, e.g. from a template to a generated plan
+     * A prepared plan can't tell which kind it is, so it is dropped straight away rather than checked when it's taken
+     */
+    private void discardPlan() {
+        if (nextPlan == null)
+            return;
+        nextPlan = null;
+        prepareNextPlan();
+    }
+
+    /**
+     * Get the plan for a reset that is happening now
+     * The prepared plan is used if it is finished and still current, otherwise a new plan is generated immediately
+     *
+     * @return a plan that matches the current state of the mine
+     */
+    private ResetPlan takePlan() {
+        CompletableFuture<ResetPlan> prepared = nextPlan;
+        nextPlan = null;
+        ResetPlan plan = null;
+        if (prepared != null && prepared.isDone() && !prepared.isCompletedExceptionally()) {
+            plan = prepared.join();
+            if (!plan.isCurrent(bounds, getCompositionVersion(), surface))
+                plan = null;
+        }
+        if (plan == null) {
+            long start = System.nanoTime();
+            plan = planReset();
+            plugin.metrics.recordPlan(name, System.nanoTime() - start);
+        }
+        if (template != null)
+            template.markUsed();
+        return plan;
     }
 
     /**
@@ -283,20 +333,43 @@ public class Mine {
      * @return true if the mine resets, false if the composition is not complete
      */
     public boolean resetMine() {
+        return resetMine(false);
+    }
+
+    /**
+     * Reset the mine
+     *
+     * @param highPriority true if this reset should be written before other mines, e.g. it was requested manually
+     *                     Resets are also given priority when players are in the mine at the time of the reset
+     * @return true if the mine resets, false if the composition is not complete
+     */
+    public boolean resetMine(boolean highPriority) {
         //Check if the mine is able to reset
-        if (!composition.isValidComposition())
+        if (!isCompositionValid())
             //Don't run if the composition isn't valid
             return false;
-        //Teleport Players in mine and send them a message
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            if (isPlayerInMine(p)) {
-                p.teleport(teleport);
-                p.sendMessage(plugin.config.getMessage("Reset.Teleport"));
+        //Occupants are tracked from movement, check the world as well so no one that was missed is buried
+        Set<Player> inMine = new HashSet<>(occupants);
+        World world = l1.getWorld();
+        if (world != null) {
+            for (Player p : world.getPlayers()) {
+                if (isPlayerInMine(p))
+                    inMine.add(p);
             }
         }
+        //Players in the mine will be waiting at the teleport for it to refill
+        boolean playersWaiting = !inMine.isEmpty();
+        //Teleport Players in mine and send them a message, the teleport will remove them from the occupants
+        for (Player p : inMine) {
+            p.teleport(teleport);
+            p.sendMessage(plugin.config.getMessage("Reset.Teleport"));
+        }
         lastReset = System.currentTimeMillis();
-        regenerateMine();
-        resetWarningTasks();
+        resetCount++;
+        //LastReset is what the next reset is planned from and ResetCount seeds hashed plans, both need to survive a restart
+        plugin.saveMine(this);
+        regenerateMine(highPriority || playersWaiting);
+        restartResetTimer();
         return true;
     }
 
@@ -308,9 +381,71 @@ public class Mine {
         //Cancel all tasks
         shutdownMine();
         //Delete the mines config data so that it won't be created again on reload
-        File f = new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".yml");
+        plugin.saveQueue.delete(this);
+        plugin.metrics.removeMine(name);
+        if (journal != null)
+            journal.close();
+        File journalFile = getJournalFile();
+        if (journalFile.exists() && !journalFile.delete())
+            plugin.getLogger().warning("Unable to delete reset journal for " + name);
+        if (template != null && !template.delete())
+            plugin.getLogger().warning("Unable to delete reset template for " + name);
+        File bitmapFile = getDirtyBitmapFile();
+        if (bitmapFile.exists() && !bitmapFile.delete())
+            plugin.getLogger().warning("Unable to delete dirty block file for " + name);
+    }
+
+    /**
+     * Mark a block as changed since the last reset, this is only tracked when diff resets are enabled
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     */
+    public void markDirty(int x, int y, int z) {
+        DirtyBitmap bitmap = dirtyBlocks;
+        if (bitmap != null)
+            bitmap.mark(x, y, z);
+    }
+
+    /**
+     * Write the dirty blocks to a file next to the mine's YAML so that they survive a restart
+     * This should be called when the plugin is disabled, the file is removed again when it is loaded
+     */
+    public void saveDirtyBitmap() {
+        DirtyBitmap bitmap = dirtyBlocks;
+        //Without a full reset since diff resets were enabled, the bitmap doesn't cover every change
+        if (bitmap == null || fullResetRequired)
+            return;
+        try {
+            bitmap.save(getDirtyBitmapFile());
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save dirty blocks for " + name + ", its next reset will be a full reset");
+        }
+    }
+
+    private void loadDirtyBitmap() {
+        dirtyBlocks = new DirtyBitmap(bounds);
+        fullResetRequired = true;
+        File f = getDirtyBitmapFile();
+        if (!f.exists())
+            return;
+        try {
+            DirtyBitmap loaded = DirtyBitmap.load(f, bounds);
+            if (loaded != null) {
+                dirtyBlocks = loaded;
+                fullResetRequired = false;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to load dirty blocks for " + name + ", its next reset will be a full reset");
+        }
+        //The file is only valid until blocks change again, if the server crashes we want a full reset
         if (!f.delete())
-            plugin.getLogger().warning("Unable to delete mine YAML file for " + name);
+            plugin.getLogger().warning("Unable to delete dirty block file for " + name);
+    }
+
+    private File getDirtyBitmapFile() {
+        return new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".dirty");
     }
 
     /**
@@ -320,69 +455,348 @@ public class Mine {
      * @return True if the players location is within the bounds of the mine, otherwise false
      */
     public boolean isPlayerInMine(Player p) {
-        MineBounds bounds = new MineBounds(this);
-        Location pLoc = p.getLocation().getBlock().getLocation();
+        return isInMine(p.getLocation());
+    }
+
+    /**
+     * Check if a location is within this mine
+     *
+     * @param loc The location to check
+     * @return True if the block at this location is within the bounds of the mine, otherwise false
+     */
+    public boolean isInMine(Location loc) {
         //Check they are in the same world
-        if (!pLoc.getWorld().equals(l1.getWorld()))
+        World world = l1.getWorld();
+        if (world == null || !world.equals(loc.getWorld()))
             return false;
         //Check if they are within the bounds of the mine
-        if (pLoc.getX() <= bounds.xMax && pLoc.getX() >= bounds.xMin) {
-            if (pLoc.getZ() <= bounds.zMax && pLoc.getZ() >= bounds.zMin) {
-                return pLoc.getY() <= bounds.yMax && pLoc.getY() >= bounds.yMin;
-            }
-        }
-        return false;
+        return bounds.contains(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    /**
+     * Get the players currently inside this mine
+     * This is kept up to date by player movement rather than being calculated when called
+     *
+     * @return an unmodifiable view of the players in this mine
+     */
+    public Set<Player> getOccupants() {
+        return Collections.unmodifiableSet(occupants);
+    }
+
+    void addOccupant(Player p) {
+        occupants.add(p);
+    }
+
+    void removeOccupant(Player p) {
+        occupants.remove(p);
     }
 
     /**
      * Regenerate the blocks within the mine based on the current composition
      * <p>
      * WARNING: This only updates the blocks, it doesn't teleport players or send them a message
+     *
+     * @param highPriority true to write this reset before resets in the normal lane
+     */
+    private void regenerateMine(boolean highPriority) {
+        BitSet mask = null;
+        DirtyBitmap bitmap = dirtyBlocks;
+        if (bitmap != null) {
+            //Taking the dirty blocks clears them, a full reset leaves every block clean too
+            BitSet dirty = bitmap.take();
+            int fingerprint = getResetFingerprint();
+            //Unchanged blocks still have the materials of the last reset, new materials need every block replaced
+            if (!fullResetRequired && bitmap.getFingerprint() == fingerprint)
+                mask = dirty;
+            bitmap.setFingerprint(fingerprint);
+            fullResetRequired = false;
+        }
+        WorldEditResetEngine engine = getResetEngine();
+        //FAWE can only fill the whole mine, a partial reset uses the scheduler unless a fill is still being written
+        if (engine != null && (mask == null || !worldEditFill.isDone())) {
+            nextPlan = null;
+            fillWithWorldEdit(engine);
+            return;
+        }
+        ResetPlan plan = takePlan();
+        if (replaceOnlyAir) {
+            queueAirSections(plan, mask, highPriority);
+            return;
+        }
+        List<SectionSetTask> sections = plan.createSections(l1.getWorld(), false, mask);
+        queueSections(sections, false, plan.getResetCount(), mask, highPriority);
+    }
+
+    /**
+     * Queue a replace only air reset once the air blocks have been found
+     * Each loaded chunk is captured as a snapshot on the thread that owns it and scanned on a worker thread, so only the
+     * blocks that are air are handed to the scheduler. Only sections in chunks that weren't loaded check the blocks they
+     * write, the rest trust the snapshot, so a block placed between the scan and the write may be replaced.
+     *
+     * @param plan         The plan for the reset
+     * @param mask         The blocks to consider, null for every block
+     * @param highPriority true to write this reset before resets in the normal lane
      */
-    private void regenerateMine() {
-        MineBounds bounds = new MineBounds(this);
-        //Start from the top and work down
-        for (int y = bounds.yMax; y >= bounds.yMin; y--) {
-            for (int x = bounds.xMin; x <= bounds.xMax; x++) {
-                for (int z = bounds.zMin; z <= bounds.zMax; z++) {
-                    if (replaceOnlyAir) {
-                        //Get the block and check if it is air
-                        Block b = getBlockAt(x, y, z);
-                        if (b == null || !b.getType().isAir()) {
-                            //If the block isn't air, then we skip it
-                            continue;
-                        }
+    private void queueAirSections(ResetPlan plan, BitSet mask, boolean highPriority) {
+        World world = l1.getWorld();
+        MineBounds planBounds = plan.getBounds();
+        CompletableFuture<List<ChunkSnapshot>> snapshots = plugin.scheduler.snapshotChunks(world,
+                planBounds.xMin >> 4, planBounds.zMin >> 4, planBounds.xMax >> 4, planBounds.zMax >> 4);
+        airScan = airScan.handle((result, e) -> null)
+                .thenCompose(v -> snapshots)
+                .thenApplyAsync(chunks -> AirMask.scan(planBounds, chunks, mask), plugin.workers)
+                .whenComplete((air, e) -> plugin.tasks.runTask(() -> {
+                    if (shutdown)
+                        return;
+                    if (e != null) {
+                        //Without the air mask the sections check every block they could write
+                        plugin.getLogger().warning("Failed to scan " + name + " for air, checking blocks as they are written");
+                        queueSections(plan.createSections(world, true, mask), true, plan.getResetCount(), mask, highPriority);
+                        return;
                     }
-                    if (y == bounds.yMax && surface != null && surface != Material.AIR) {
-                        //yMin is the top layer, if we have a surface set then this whole layer should be set as it
-                        setBlock(x, y, z, surface);
+                    //The journal keeps replace only air on, so a resumed reset checks every block it writes
+                    queueSections(plan.createSections(world, air), true, plan.getResetCount(), air.getBlocks(),
+                            highPriority);
+                }, false));
+    }
+
+    /**
+     * Get the FastAsyncWorldEdit engine if this mine can be reset with it
+     * Templates, hashed generation and layers decide every block themselves, so those mines always use the scheduler
+     *
+     * @return the reset engine, or null if this mine should be reset by the scheduler
+     */
+    private WorldEditResetEngine getResetEngine() {
+        if (template != null || hashedGeneration || !layers.isEmpty())
+            return null;
+        return plugin.worldEditManager.getResetEngine();
+    }
+
+    /**
+     * Fill the whole mine through FastAsyncWorldEdit, after any fill for this mine that is still being written
+     *
+     * @param engine The engine to fill with
+     */
+    private void fillWithWorldEdit(WorldEditResetEngine engine) {
+        //FAWE writes the mine in one go, so an unfinished reset from before is replaced rather than resumed
+        clearJournal();
+        ResetTracker tracker = plugin.metrics.startReset(name, 1);
+        World world = l1.getWorld();
+        MineBounds fillBounds = bounds;
+        Map<Material, Double> materials = new HashMap<>(composition.getMaterialMap());
+        Material fillSurface = surface;
+        boolean onlyAir = replaceOnlyAir;
+        long start = System.nanoTime();
+        worldEditFill = worldEditFill.handle((result, e) -> null)
+                .thenCompose(v -> engine.fill(world, fillBounds, materials, fillSurface, onlyAir))
+                .whenComplete((changed, e) -> plugin.tasks.runTask(() -> {
+                    if (e != null) {
+                        plugin.getLogger().warning("FastAsyncWorldEdit failed to reset " + name + ": " + e.getMessage());
+                        tracker.sectionComplete(0, System.nanoTime() - start);
                     } else {
-                        //Not the surface, lets calculate a block to place
-                        setBlock(x, y, z, composition.getNextMaterial());
+                        tracker.sectionComplete(changed, System.nanoTime() - start);
                     }
-                }
-            }
+                }, false));
+    }
+
+    /**
+     * Hand the sections of a reset to the scheduler, journaling them so the reset can be resumed if it is interrupted
+     *
+     * @param sections     The sections to write
+     * @param onlyAir      The replace only air setting the sections were created with
+     * @param resetCount   The reset number of the plan if it is hashed, -1 otherwise
+     * @param mask         The mask the sections were created with, null for every block
+     * @param highPriority true to write these sections before resets in the normal lane
+     */
+    private void queueSections(List<SectionSetTask> sections, boolean onlyAir, long resetCount, BitSet mask,
+                               boolean highPriority) {
+        ResetTracker tracker = plugin.metrics.startReset(name, sections.size());
+        boolean applyPhysics = plugin.getConfig().getBoolean("ApplyPhysics", true);
+        for (SectionSetTask section : sections) {
+            section.setTracker(tracker);
+            section.setApplyPhysics(applyPhysics);
+        }
+        //A new reset replaces the journal of one that hasn't finished, its remaining sections are being written again
+        if (sections.isEmpty()) {
+            clearJournal();
+            return;
         }
+        if (journal != null)
+            journal.close();
+        journal = new ResetJournal(getJournalFile(), bounds, onlyAir, resetCount, mask, sections, plugin.workers,
+                plugin.getConfig().getInt("JournalFlushSections", 16));
+        //The scheduler shares its budget between every mine that is resetting
+        plugin.scheduler.addReset(new ResetJob(name, highPriority, blocksPerTick), sections);
     }
 
-    private void setBlock(int x, int y, int z, Material mat) {
-        //Give the scheduler a new block set task for the proper location and material
-        plugin.scheduler.addTask(new BlockSetTask(new Location(l1.getWorld(), x, y, z), mat));
+    /**
+     * Close the journal of the current reset and delete its file
+     */
+    private void clearJournal() {
+        if (journal != null)
+            journal.close();
+        journal = null;
+        File f = getJournalFile();
+        if (f.exists() && !f.delete())
+            plugin.getLogger().warning("Unable to delete reset journal for " + name);
     }
 
-    private Block getBlockAt(int x, int y, int z) {
-        World w = l1.getWorld();
-        if (w == null)
-            return null;
-        return w.getBlockAt(x, y, z);
+    /**
+     * Finish a reset that was interrupted by the server stopping, using the journal it left behind
+     * The remaining sections are written from a new plan, so a mine using a template or hashed generation gets exactly
+     * the blocks it would have, otherwise the remaining blocks are picked again from the composition
+     */
+    public void resumeInterruptedReset() {
+        File f = getJournalFile();
+        if (!f.exists())
+            return;
+        ResetJournal.Progress progress = null;
+        try {
+            progress = ResetJournal.read(f, bounds);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read the reset journal for " + name + ", the reset can't be resumed");
+        }
+        if (progress == null || !isCompositionValid()) {
+            if (!f.delete())
+                plugin.getLogger().warning("Unable to delete reset journal for " + name);
+            return;
+        }
+        ResetPlan plan = hashedGeneration && template == null && progress.resetCount() >= 0
+                ? ResetPlan.hashed(bounds, getSampler(), getCompositionVersion(), surface, seed, progress.resetCount())
+                : planReset();
+        List<SectionSetTask> sections = progress.createRemaining(plan, l1.getWorld());
+        plugin.getLogger().info("Resuming the interrupted reset of " + name + ", " + sections.size() + " section(s) remaining");
+        //The mine has been half filled since the server stopped, so finish it before anything else
+        queueSections(sections, progress.replaceOnlyAir(), plan.getResetCount(), progress.mask(), true);
+    }
+
+    /**
+     * Write the progress of a reset that is still running, so it can be resumed if the plugin is disabled
+     */
+    public void flushJournal() {
+        if (journal != null)
+            journal.flush();
+    }
+
+    private File getJournalFile() {
+        return new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".journal");
+    }
+
+    /**
+     * Pick the material for every block in the mine without placing any of them
+     * When the mine uses a template this reads the template instead, generating it first if needed
+     * This runs on the calling thread, see {@link #prepareNextPlan()} to plan in the background
+     *
+     * @return a plan for resetting the mine in its current state
+     */
+    public ResetPlan planReset() {
+        LayeredSampler sampler = getSampler();
+        if (template != null)
+            return template.getPlan(bounds, sampler, getCompositionVersion(), getCompositionFingerprint(), surface);
+        if (hashedGeneration)
+            return ResetPlan.hashed(bounds, sampler, getCompositionVersion(), surface, seed, resetCount);
+        return ResetPlan.generate(bounds, sampler, getCompositionVersion(), surface);
+    }
+
+    /**
+     * Get the compiled composition and layers of this mine, compiling them again if anything has changed
+     *
+     * @return a sampler for every level of the mine
+     */
+    private LayeredSampler getSampler() {
+        if (compiledSampler == null || compiledVersion != getCompositionVersion() || compiledBounds != bounds) {
+            compiledSampler = LayeredSampler.compile(bounds, composition, layers, layerMode);
+            //Compiling can fill an incomplete composition, so the version is read afterwards
+            compiledVersion = getCompositionVersion();
+            compiledBounds = bounds;
+        }
+        return compiledSampler;
+    }
+
+    /**
+     * Get a version number that increases whenever the composition or any of the layers change
+     *
+     * @return the current version of everything that decides which materials are picked
+     */
+    private int getCompositionVersion() {
+        int version = composition.getVersion() + layoutVersion;
+        for (CompositionLayer layer : layers) {
+            version += layer.getComposition().getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Get a hash of the composition and layers that is the same across restarts, see {@link Composition#getFingerprint()}
+     *
+     * @return a hash that changes when the composition or layers change
+     */
+    private int getCompositionFingerprint() {
+        int fingerprint = composition.getFingerprint();
+        //Mines without layers keep the fingerprint they had before layers existed, so their templates stay valid
+        if (layers.isEmpty())
+            return fingerprint;
+        fingerprint = 31 * fingerprint + layerMode.ordinal();
+        for (CompositionLayer layer : layers) {
+            fingerprint = 31 * fingerprint + Objects.hash(layer.getName(), layer.getMinY(), layer.getMaxY(),
+                    layer.getComposition().getFingerprint());
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Get a hash of everything that decides which materials a reset places, the same across restarts
+     *
+     * @return the composition fingerprint combined with the surface
+     */
+    private int getResetFingerprint() {
+        return 31 * getCompositionFingerprint() + (surface == null ? 0 : surface.name().hashCode());
+    }
+
+    private CompositionLayer.Mode parseLayerMode(YamlConfiguration config) {
+        CompositionLayer.Mode mode = CompositionLayer.Mode.fromName(config.getString("LayerMode", "Bands"));
+        if (mode == null)
+            throw new IllegalArgumentException("LayerMode must be Bands or Gradient");
+        return mode;
+    }
+
+    private List<CompositionLayer> parseLayers(YamlConfiguration config) {
+        List<CompositionLayer> parsed = new ArrayList<>();
+        ConfigurationSection section = config.getConfigurationSection("Layers");
+        if (section == null)
+            return parsed;
+        for (String layerName : section.getKeys(false)) {
+            if (!section.contains(layerName + ".MinY") || !section.contains(layerName + ".MaxY"))
+                throw new IllegalArgumentException("Layer " + layerName + " needs both MinY and MaxY");
+            parsed.add(new CompositionLayer(layerName, section.getInt(layerName + ".MinY"),
+                    section.getInt(layerName + ".MaxY"),
+                    new Composition(plugin, section.getStringList(layerName + ".Composition"))));
+        }
+        return parsed;
     }
 
     /**
      * Save the mines information to a YamlConfig file
+     * This writes on the calling thread, {@link LapisMine#saveMine(Mine)} saves in the background instead
      *
      * @param config The YamlConfig file to save too
      */
     public void saveMine(YamlConfiguration config) {
+        writeTo(config);
+        try {
+            File f = new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".yml");
+            config.save(f);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Set the mines information in a YamlConfig without saving it
+     *
+     * @param config The YamlConfig to write the mine to
+     */
+    public void writeTo(YamlConfiguration config) {
         config.set("Name", name);
         config.set("Locations.teleport", locationUtils.parseLocationToString(teleport));
         config.set("Locations.l1", locationUtils.parseLocationToString(l1));
@@ -392,15 +806,117 @@ public class Mine {
         else
             config.set("Surface", null);
         config.set("Composition", composition.parseToStringList());
+        config.set("LayerMode", layerMode.name());
+        config.set("Layers", null);
+        for (CompositionLayer layer : layers) {
+            String path = "Layers." + layer.getName();
+            config.set(path + ".MinY", layer.getMinY());
+            config.set(path + ".MaxY", layer.getMaxY());
+            config.set(path + ".Composition", layer.getComposition().parseToStringList());
+        }
         config.set("ResetFrequency", resetFrequency);
         config.set("LastReset", lastReset);
         config.set("ReplaceOnlyAir", replaceOnlyAir);
-        try {
-            File f = new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".yml");
-            config.save(f);
-        } catch (IOException e) {
-            e.printStackTrace();
+        config.set("BlocksPerTick", blocksPerTick);
+        config.set("DiffReset", diffReset);
+        config.set("Seed", seed);
+        config.set("ResetCount", resetCount);
+        config.set("HashedGeneration", hashedGeneration);
+        if (template != null) {
+            config.set("Template.File", template.getFile().getName());
+            config.set("Template.RegenerateEvery", template.getRegenerateEvery());
+        } else {
+            config.set("Template", null);
+        }
+    }
+
+    /**
+     * Apply an edited copy of this mine's YAML, changing only the settings that differ
+     * Unlike creating a new mine, this leaves the reset timer, countdown and any reset in progress alone
+     * unless the changed settings affect them, e.g. a new composition only means new blocks are picked.
+     *
+     * @param config The edited YAML for this mine
+     * @return the keys of the settings that changed, empty if nothing did
+     * @throws IllegalArgumentException if a required value is missing or invalid, nothing is changed if so
+     */
+    public List<String> applyChanges(YamlConfiguration config) {
+        List<String> changed = new ArrayList<>();
+        //Parse everything that can fail before changing anything
+        Location newL1 = locationUtils.parseStringToLocation(config.getString("Locations.l1"));
+        Location newL2 = locationUtils.parseStringToLocation(config.getString("Locations.l2"));
+        if (newL1 == null || newL2 == null)
+            throw new IllegalArgumentException("Locations.l1 and Locations.l2 must both be set");
+        checkOverlap(newL1, newL2);
+        Composition newComposition = new Composition(plugin, config.getStringList("Composition"));
+        CompositionLayer.Mode newLayerMode = parseLayerMode(config);
+        List<CompositionLayer> newLayers = parseLayers(config);
+        String teleportString = config.getString("Locations.teleport");
+        if (!Objects.equals(teleportString, locationUtils.parseLocationToString(teleport))) {
+            setTeleport(locationUtils.parseStringToLocation(teleportString));
+            changed.add("Locations.teleport");
+        }
+        if (!config.getString("Locations.l1").equals(locationUtils.parseLocationToString(l1))
+                || !config.getString("Locations.l2").equals(locationUtils.parseLocationToString(l2))) {
+            setCorners(newL1, newL2);
+            changed.add("Locations");
+        }
+        if (composition.replaceMaterials(newComposition))
+            changed.add("Composition");
+        if (newLayerMode != layerMode) {
+            setLayerMode(newLayerMode);
+            changed.add("LayerMode");
+        }
+        if (applyLayerChanges(newLayers))
+            changed.add("Layers");
+        Material newSurface = Material.getMaterial(config.getString("Surface", ""));
+        if (newSurface != surface) {
+            setSurface(newSurface);
+            changed.add("Surface");
+        }
+        boolean rescheduled = false;
+        if (config.getLong("LastReset") != lastReset) {
+            lastReset = config.getLong("LastReset");
+            rescheduled = true;
+            changed.add("LastReset");
+        }
+        if (config.getInt("ResetFrequency") != resetFrequency) {
+            int oldFrequency = resetFrequency;
+            resetFrequency = config.getInt("ResetFrequency");
+            plugin.resetPlanner.frequencyChanged(this, oldFrequency);
+            rescheduled = true;
+            changed.add("ResetFrequency");
+        }
+        if (rescheduled)
+            restartResetTimer();
+        if (config.getBoolean("ReplaceOnlyAir") != replaceOnlyAir) {
+            setReplaceOnlyAir(config.getBoolean("ReplaceOnlyAir"));
+            changed.add("ReplaceOnlyAir");
+        }
+        if (config.getInt("BlocksPerTick") != blocksPerTick) {
+            setBlocksPerTick(config.getInt("BlocksPerTick"));
+            changed.add("BlocksPerTick");
+        }
+        if (config.getBoolean("HashedGeneration") != hashedGeneration) {
+            setHashedGeneration(config.getBoolean("HashedGeneration"));
+            changed.add("HashedGeneration");
         }
+        if (config.contains("Seed") && config.getLong("Seed") != seed) {
+            seed = config.getLong("Seed");
+            changed.add("Seed");
+        }
+        if (config.getBoolean("DiffReset") != diffReset) {
+            setDiffReset(config.getBoolean("DiffReset"));
+            changed.add("DiffReset");
+        }
+        if (config.isConfigurationSection("Template") != isUsingTemplate()) {
+            setUseTemplate(config.isConfigurationSection("Template"));
+            changed.add("Template");
+        }
+        if (template != null && config.getInt("Template.RegenerateEvery") != template.getRegenerateEvery()) {
+            setTemplateRegenerateEvery(config.getInt("Template.RegenerateEvery"));
+            changed.add("Template.RegenerateEvery");
+        }
+        return changed;
     }
 
     /**
@@ -412,6 +928,138 @@ public class Mine {
         return composition;
     }
 
+    /**
+     * Check if the composition and the composition of every layer add up to 1
+     *
+     * @return true if the mine can be reset
+     */
+    public boolean isCompositionValid() {
+        if (!composition.isValidComposition())
+            return false;
+        for (CompositionLayer layer : layers) {
+            if (!layer.getComposition().isValidComposition())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the composition layers of this mine, in the order they are checked
+     *
+     * @return an unmodifiable list of the layers
+     */
+    public List<CompositionLayer> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * Get a composition layer by name, ignoring case
+     *
+     * @param layerName The name of the layer
+     * @return the layer, or null if this mine has no layer with that name
+     */
+    public CompositionLayer getLayer(String layerName) {
+        for (CompositionLayer layer : layers) {
+            if (layer.getName().equalsIgnoreCase(layerName))
+                return layer;
+        }
+        return null;
+    }
+
+    /**
+     * Add a composition layer with an empty composition, the mine can't reset until it is filled
+     *
+     * @param layerName The name of the new layer
+     * @param minY      The lowest Y level of the layer
+     * @param maxY      The highest Y level of the layer
+     * @return the new layer, or null if there is already a layer with that name
+     */
+    public CompositionLayer addLayer(String layerName, int minY, int maxY) {
+        if (getLayer(layerName) != null)
+            return null;
+        CompositionLayer layer = new CompositionLayer(layerName, minY, maxY, new Composition(plugin));
+        layer.getComposition().setChangeListener(this::invalidatePlan);
+        layers.add(layer);
+        layoutChanged();
+        return layer;
+    }
+
+    /**
+     * Remove a composition layer, the levels it covered go back to the main composition
+     *
+     * @param layerName The name of the layer to remove
+     * @return false if this mine has no layer with that name
+     */
+    public boolean removeLayer(String layerName) {
+        CompositionLayer layer = getLayer(layerName);
+        if (layer == null)
+            return false;
+        layers.remove(layer);
+        //The removed composition's changes must still count towards the version, so it never goes backwards
+        layoutVersion += layer.getComposition().getVersion();
+        layoutChanged();
+        return true;
+    }
+
+    /**
+     * Get how the layers of this mine are combined
+     *
+     * @return the layer mode
+     */
+    public CompositionLayer.Mode getLayerMode() {
+        return layerMode;
+    }
+
+    /**
+     * Set how the layers of this mine are combined
+     *
+     * @param layerMode Bands for layers with exactly their own composition, Gradient to blend between them
+     */
+    public void setLayerMode(CompositionLayer.Mode layerMode) {
+        if (this.layerMode == layerMode)
+            return;
+        this.layerMode = layerMode;
+        layoutChanged();
+    }
+
+    /**
+     * Apply the layers from an edited mine file, keeping layers whose name and levels haven't changed
+     *
+     * @param newLayers The layers parsed from the file
+     * @return true if anything about the layers changed
+     */
+    private boolean applyLayerChanges(List<CompositionLayer> newLayers) {
+        boolean sameLayout = newLayers.size() == layers.size();
+        for (int i = 0; sameLayout && i < layers.size(); i++) {
+            CompositionLayer layer = layers.get(i);
+            CompositionLayer newLayer = newLayers.get(i);
+            sameLayout = layer.getName().equals(newLayer.getName()) && layer.getMinY() == newLayer.getMinY()
+                    && layer.getMaxY() == newLayer.getMaxY();
+        }
+        if (sameLayout) {
+            boolean changed = false;
+            for (int i = 0; i < layers.size(); i++) {
+                changed |= layers.get(i).getComposition().replaceMaterials(newLayers.get(i).getComposition());
+            }
+            return changed;
+        }
+        for (CompositionLayer layer : layers) {
+            layoutVersion += layer.getComposition().getVersion();
+        }
+        layers.clear();
+        for (CompositionLayer layer : newLayers) {
+            layer.getComposition().setChangeListener(this::invalidatePlan);
+            layers.add(layer);
+        }
+        layoutChanged();
+        return true;
+    }
+
+    private void layoutChanged() {
+        layoutVersion++;
+        invalidatePlan();
+    }
+
     /**
      * Sets the surface block for the mine
      *
@@ -420,11 +1068,12 @@ public class Mine {
     public void setSurface(Material mat) {
         if (mat == null) {
             this.surface = null;
-            return;
+        } else {
+            if (!mat.isBlock())
+                return;
+            this.surface = mat;
         }
-        if (!mat.isBlock())
-            return;
-        this.surface = mat;
+        invalidatePlan();
     }
 
     /**
@@ -442,7 +1091,10 @@ public class Mine {
      * @param minutes the number of minutes between each reset
      */
     public void setResetFrequency(int minutes) {
+        int oldFrequency = resetFrequency;
         this.resetFrequency = minutes;
+        plugin.resetPlanner.frequencyChanged(this, oldFrequency);
+        restartResetTimer();
     }
 
     /**
@@ -454,6 +1106,15 @@ public class Mine {
         return lastReset;
     }
 
+    /**
+     * Get the epoch for when the mine is next planned to reset
+     *
+     * @return the system time of the next reset
+     */
+    public long getNextReset() {
+        return nextReset;
+    }
+
     /**
      * Get the name of the mine
      *
@@ -481,6 +1142,15 @@ public class Mine {
         this.teleport = loc;
     }
 
+    /**
+     * Get the bounds of this mine, these are cached and replaced whenever l1 or l2 change
+     *
+     * @return the current bounds of the mine
+     */
+    public MineBounds getBounds() {
+        return bounds;
+    }
+
     /**
      * Get the l1 location, this is the maximum point of the mine
      *
@@ -494,9 +1164,10 @@ public class Mine {
      * Set the l1 location for this mine, it should be the maximum point for the mine.
      *
      * @param loc the new l1 location
+     * @throws IllegalArgumentException if the mine would overlap another mine, the corners aren't changed if so
      */
     public void setL1(Location loc) {
-        this.l1 = loc;
+        setCorners(loc, l2);
     }
 
     /**
@@ -512,9 +1183,31 @@ public class Mine {
      * Set the l2 location for this mine, it should be the minimum point for the mine.
      *
      * @param loc the new l2 location
+     * @throws IllegalArgumentException if the mine would overlap another mine, the corners aren't changed if so
      */
     public void setL2(Location loc) {
-        this.l2 = loc;
+        setCorners(l1, loc);
+    }
+
+    private void setCorners(Location l1, Location l2) {
+        checkOverlap(l1, l2);
+        this.l1 = l1;
+        this.l2 = l2;
+        bounds = new MineBounds(l1, l2);
+        plugin.getMineIndex().update(this);
+        plugin.refreshOccupancy();
+        invalidatePlan();
+        if (diffReset) {
+            //The old bitmap doesn't line up with the new bounds
+            dirtyBlocks = new DirtyBitmap(bounds);
+            fullResetRequired = true;
+        }
+    }
+
+    private void checkOverlap(Location l1, Location l2) {
+        Mine overlap = plugin.getMineIndex().getOverlappingMine(l1.getWorld(), new MineBounds(l1, l2), this);
+        if (overlap != null)
+            throw new IllegalArgumentException("The mine would overlap mine " + overlap.getName());
     }
 
     /**
@@ -525,4 +1218,127 @@ public class Mine {
     public void setReplaceOnlyAir(boolean replaceOnlyAir) {
         this.replaceOnlyAir = replaceOnlyAir;
     }
+
+    /**
+     * Get the most blocks this mine may write per tick while resetting
+     *
+     * @return the cap, 0 if resets are only limited by the scheduler's budget
+     */
+    public int getBlocksPerTick() {
+        return blocksPerTick;
+    }
+
+    /**
+     * Set the most blocks this mine may write per tick while resetting
+     * The cap is checked per chunk section, so a tick may go over it by up to one section
+     *
+     * @param blocksPerTick the cap, 0 to only be limited by the scheduler's budget
+     */
+    public void setBlocksPerTick(int blocksPerTick) {
+        this.blocksPerTick = Math.max(0, blocksPerTick);
+    }
+
+    /**
+     * Check if diff resets are enabled for this mine
+     *
+     * @return true if resets only replace blocks that have changed since the last reset
+     */
+    public boolean isDiffReset() {
+        return diffReset;
+    }
+
+    /**
+     * Set diff reset. When true, resets only replace the blocks that were changed since the last reset
+     * The first reset after enabling this is always a full reset, since earlier changes weren't tracked
+     *
+     * @param diffReset true to only replace changed blocks
+     */
+    public void setDiffReset(boolean diffReset) {
+        if (diffReset == this.diffReset)
+            return;
+        this.diffReset = diffReset;
+        if (diffReset) {
+            dirtyBlocks = new DirtyBitmap(bounds);
+            fullResetRequired = true;
+        } else {
+            dirtyBlocks = null;
+        }
+    }
+
+    /**
+     * Check if hashed generation is enabled for this mine
+     *
+     * @return true if each block's material depends only on the mine's seed, the reset number and its position
+     */
+    public boolean isHashedGeneration() {
+        return hashedGeneration;
+    }
+
+    /**
+     * Set hashed generation. When true, nothing is generated before a reset, each section works out its own blocks
+     * as it is written and an interrupted reset is finished with exactly the blocks it started with
+     * Templates take priority over hashed generation
+     *
+     * @param hashedGeneration true to pick blocks by hashing their position
+     */
+    public void setHashedGeneration(boolean hashedGeneration) {
+        if (this.hashedGeneration == hashedGeneration)
+            return;
+        this.hashedGeneration = hashedGeneration;
+        discardPlan();
+    }
+
+    /**
+     * Check if this mine resets from a stored template
+     *
+     * @return true if every reset uses the same pre-rolled layout
+     */
+    public boolean isUsingTemplate() {
+        return template != null;
+    }
+
+    /**
+     * Enable or disable template mode. With a template, the layout is rolled once and reused for every reset
+     * Disabling template mode deletes the template file
+     *
+     * @param useTemplate true to reset from a template
+     */
+    public void setUseTemplate(boolean useTemplate) {
+        if (useTemplate == (template != null))
+            return;
+        if (useTemplate) {
+            template = new ResetTemplate(new File(plugin.getDataFolder(), "Mines" + File.separator + name + ".template"), 0);
+        } else {
+            if (!template.delete())
+                plugin.getLogger().warning("Unable to delete reset template for " + name);
+            template = null;
+        }
+        discardPlan();
+    }
+
+    /**
+     * Roll a new layout for the template, this is started on a worker thread straight away
+     *
+     * @return false if the mine doesn't use a template
+     */
+    public boolean regenerateTemplate() {
+        if (template == null)
+            return false;
+        template.requestRegenerate();
+        prepareNextPlan();
+        return true;
+    }
+
+    /**
+     * Set how many resets a template layout is used for before it is rolled again
+     *
+     * @param resets the number of resets, 0 to only regenerate on demand
+     * @return false if the mine doesn't use a template
+     */
+    public boolean setTemplateRegenerateEvery(int resets) {
+        if (template == null)
+            return false;
+        template.setRegenerateEvery(resets);
+        return true;
+    }
 }
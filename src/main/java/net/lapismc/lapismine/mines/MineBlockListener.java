@@ -0,0 +1,105 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.LapisMine;
+import org.bukkit.Bukkit;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.*;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+
+import java.util.List;
+
+/**
+ * Marks blocks inside diff reset mines as dirty when they are changed by players or the world
+ */
+public class MineBlockListener implements Listener {
+
+    private final LapisMine plugin;
+
+    /**
+     * Start tracking block changes, this registers the listener
+     *
+     * @param plugin The LapisMine plugin instance
+     */
+    public MineBlockListener(LapisMine plugin) {
+        this.plugin = plugin;
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent e) {
+        mark(e.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent e) {
+        mark(e.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent e) {
+        markAll(e.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent e) {
+        markAll(e.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent e) {
+        markMoved(e.getBlocks(), e.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent e) {
+        markMoved(e.getBlocks(), e.getDirection());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent e) {
+        //Covers gravel and sand falling out of the mine when the block below is mined
+        mark(e.getBlock());
+    }
+
+    private void markMoved(List<Block> blocks, BlockFace direction) {
+        //Both the block's old position and the position it is pushed into have changed
+        for (Block b : blocks) {
+            mark(b);
+            mark(b.getRelative(direction));
+        }
+    }
+
+    private void markAll(List<Block> blocks) {
+        for (Block b : blocks) {
+            mark(b);
+        }
+    }
+
+    private void mark(Block b) {
+        Mine mine = plugin.getMineIndex().getMineAt(b.getWorld().getUID(), b.getX(), b.getY(), b.getZ());
+        if (mine != null)
+            mine.markDirty(b.getX(), b.getY(), b.getZ());
+    }
+
+}
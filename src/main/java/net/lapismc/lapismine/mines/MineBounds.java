@@ -20,13 +20,14 @@ import org.bukkit.Location;
 
 /**
  * a class to calculate and access the min and max coordinates of a mine
+ * Bounds are immutable, a mine creates a new instance whenever its corners change
  */
 public class MineBounds {
 
     /**
      * The calculated values are stored here for you to access
      */
-    public int xMax, xMin, yMax, yMin, zMax, zMin;
+    public final int xMax, xMin, yMax, yMin, zMax, zMin;
 
     /**
      * Calculate the bounds of a mine
@@ -34,8 +35,16 @@ public class MineBounds {
      * @param mine The mine to calculate bounds for
      */
     public MineBounds(Mine mine) {
-        Location l1 = mine.getL1();
-        Location l2 = mine.getL2();
+        this(mine.getL1(), mine.getL2());
+    }
+
+    /**
+     * Calculate the bounds of the cuboid between two corners
+     *
+     * @param l1 The first corner
+     * @param l2 The opposite corner
+     */
+    public MineBounds(Location l1, Location l2) {
         xMax = Math.max(l1.getBlockX(), l2.getBlockX());
         xMin = Math.min(l1.getBlockX(), l2.getBlockX());
         yMax = Math.max(l1.getBlockY(), l2.getBlockY());
@@ -44,4 +53,50 @@ public class MineBounds {
         zMin = Math.min(l1.getBlockZ(), l2.getBlockZ());
     }
 
+    /**
+     * Check if a block position is within these bounds
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return true if the position is inside the bounds, edges included
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= xMin && x <= xMax && y >= yMin && y <= yMax && z >= zMin && z <= zMax;
+    }
+
+    /**
+     * Get the number of blocks within these bounds
+     *
+     * @return the volume of the bounds in blocks
+     */
+    public int getVolume() {
+        return Math.multiplyExact(Math.multiplyExact(xMax - xMin + 1, zMax - zMin + 1), yMax - yMin + 1);
+    }
+
+    /**
+     * Get the position of a block in a flat array covering these bounds
+     * Blocks are ordered by x, then z, then y, so each y layer is one contiguous run
+     *
+     * @param x The block x coordinate, must be within the bounds
+     * @param y The block y coordinate, must be within the bounds
+     * @param z The block z coordinate, must be within the bounds
+     * @return the index of the block, between 0 and the volume
+     */
+    public int indexOf(int x, int y, int z) {
+        return ((y - yMin) * (zMax - zMin + 1) + (z - zMin)) * (xMax - xMin + 1) + (x - xMin);
+    }
+
+    /**
+     * Check if these bounds share any blocks with another set of bounds
+     *
+     * @param other The bounds to check against
+     * @return true if at least one block is inside both bounds
+     */
+    public boolean intersects(MineBounds other) {
+        return xMin <= other.xMax && xMax >= other.xMin
+                && yMin <= other.yMax && yMax >= other.yMin
+                && zMin <= other.zMax && zMax >= other.zMin;
+    }
+
 }
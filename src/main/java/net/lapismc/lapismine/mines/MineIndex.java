@@ -0,0 +1,291 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * A per world spatial index of mines, keyed by the chunk columns each mine covers
+ * Lookups are safe from any thread and don't allocate, changes rebuild the affected world's table
+ */
+public class MineIndex {
+
+    private final Map<UUID, List<Mine>> minesByWorld = new HashMap<>();
+    private volatile Map<UUID, ChunkTable> tables = Collections.emptyMap();
+
+    /**
+     * Add a mine to the index, mines in worlds that aren't loaded are skipped
+     * A mine that overlaps an indexed mine isn't added, since each block can only belong to one mine
+     *
+     * @param mine The mine to index
+     * @return the indexed mine that the new mine overlaps, or null if it was added
+     */
+    public synchronized Mine add(Mine mine) {
+        UUID worldId = getWorldId(mine);
+        if (worldId == null)
+            return null;
+        Mine overlap = findOverlap(tables.get(worldId), mine.getBounds(), null);
+        if (overlap != null)
+            return overlap;
+        minesByWorld.computeIfAbsent(worldId, id -> new ArrayList<>()).add(mine);
+        rebuild(worldId);
+        return null;
+    }
+
+    /**
+     * Add several mines to the index, rebuilding each world's table once rather than once per mine
+     * Mines that overlap an indexed mine, or one added earlier in the same call, are left out
+     *
+     * @param mines The mines to index
+     * @return the mines that were left out, mapped to the mine each one overlaps
+     */
+    public synchronized Map<Mine, Mine> addAll(Collection<Mine> mines) {
+        Map<Mine, Mine> rejected = new LinkedHashMap<>();
+        //The chunk columns of the mines added so far, the tables aren't rebuilt until every mine is checked
+        Map<UUID, Map<Long, List<Mine>>> added = new HashMap<>();
+        for (Mine mine : mines) {
+            UUID worldId = getWorldId(mine);
+            if (worldId == null)
+                continue;
+            MineBounds bounds = mine.getBounds();
+            Mine overlap = findOverlap(tables.get(worldId), bounds, null);
+            Map<Long, List<Mine>> columns = added.computeIfAbsent(worldId, id -> new HashMap<>());
+            if (overlap == null)
+                overlap = findOverlap(columns, bounds);
+            if (overlap != null) {
+                rejected.put(mine, overlap);
+                continue;
+            }
+            minesByWorld.computeIfAbsent(worldId, id -> new ArrayList<>()).add(mine);
+            addColumns(columns, mine);
+        }
+        for (UUID worldId : added.keySet()) {
+            rebuild(worldId);
+        }
+        return rejected;
+    }
+
+    /**
+     * Remove a mine from the index
+     *
+     * @param mine The mine to remove
+     * @return true if the mine was in the index
+     */
+    public synchronized boolean remove(Mine mine) {
+        for (Map.Entry<UUID, List<Mine>> entry : minesByWorld.entrySet()) {
+            if (entry.getValue().remove(mine)) {
+                rebuild(entry.getKey());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-index a mine after its bounds have changed, this does nothing if the mine isn't indexed
+     * Check the new bounds with {@link #getOverlappingMine(World, MineBounds, Mine)} first, a mine that now overlaps
+     * another is dropped from the index
+     *
+     * @param mine The mine that has changed
+     * @return the mine it now overlaps, or null if it was re-indexed
+     */
+    public synchronized Mine update(Mine mine) {
+        if (remove(mine))
+            return add(mine);
+        return null;
+    }
+
+    /**
+     * Find the mine that contains a location
+     *
+     * @param loc The location to check
+     * @return the mine containing the block at this location, or null if it isn't in a mine
+     */
+    public Mine getMineAt(Location loc) {
+        World world = loc.getWorld();
+        if (world == null)
+            return null;
+        return getMineAt(world.getUID(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    /**
+     * Find the mine that contains a block position
+     *
+     * @param worldId The UUID of the world the position is in
+     * @param x       The block x coordinate
+     * @param y       The block y coordinate
+     * @param z       The block z coordinate
+     * @return the mine containing the position, or null if it isn't in a mine
+     */
+    public Mine getMineAt(UUID worldId, int x, int y, int z) {
+        ChunkTable table = tables.get(worldId);
+        if (table == null)
+            return null;
+        return table.get(x, y, z);
+    }
+
+    /**
+     * Find a mine that shares any blocks with the given bounds
+     *
+     * @param world  The world the bounds are in
+     * @param bounds The bounds to check
+     * @return the first overlapping mine found, or null if no mine overlaps
+     */
+    public Mine getOverlappingMine(World world, MineBounds bounds) {
+        return getOverlappingMine(world, bounds, null);
+    }
+
+    /**
+     * Find a mine other than the given one that shares any blocks with the given bounds
+     *
+     * @param world   The world the bounds are in
+     * @param bounds  The bounds to check
+     * @param exclude A mine to ignore, such as a mine that is being moved to these bounds
+     * @return the first overlapping mine found, or null if no mine overlaps
+     */
+    public Mine getOverlappingMine(World world, MineBounds bounds, Mine exclude) {
+        if (world == null)
+            return null;
+        return findOverlap(tables.get(world.getUID()), bounds, exclude);
+    }
+
+    private Mine findOverlap(ChunkTable table, MineBounds bounds, Mine exclude) {
+        if (table == null)
+            return null;
+        for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+            for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                Mine[] candidates = table.getColumn(chunkX, chunkZ);
+                if (candidates == null)
+                    continue;
+                for (Mine m : candidates) {
+                    if (m != exclude && m.getBounds().intersects(bounds))
+                        return m;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Mine findOverlap(Map<Long, List<Mine>> columns, MineBounds bounds) {
+        for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+            for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                List<Mine> candidates = columns.get(ChunkTable.key(chunkX, chunkZ));
+                if (candidates == null)
+                    continue;
+                for (Mine m : candidates) {
+                    if (m.getBounds().intersects(bounds))
+                        return m;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void addColumns(Map<Long, List<Mine>> columns, Mine mine) {
+        MineBounds bounds = mine.getBounds();
+        for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+            for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                columns.computeIfAbsent(ChunkTable.key(chunkX, chunkZ), k -> new ArrayList<>(1)).add(mine);
+            }
+        }
+    }
+
+    private void rebuild(UUID worldId) {
+        List<Mine> worldMines = minesByWorld.get(worldId);
+        Map<UUID, ChunkTable> newTables = new HashMap<>(tables);
+        if (worldMines == null || worldMines.isEmpty()) {
+            minesByWorld.remove(worldId);
+            newTables.remove(worldId);
+        } else {
+            newTables.put(worldId, new ChunkTable(worldMines));
+        }
+        //Publish the new tables in one write so that readers never see a half built index
+        tables = newTables;
+    }
+
+    private UUID getWorldId(Mine mine) {
+        Location l1 = mine.getL1();
+        if (l1 == null || l1.getWorld() == null)
+            return null;
+        return l1.getWorld().getUID();
+    }
+
+    /**
+     * An open addressing hash table from chunk column to the mines that touch it
+     */
+    private static final class ChunkTable {
+
+        private final long[] keys;
+        private final Mine[][] values;
+        private final int mask;
+
+        private ChunkTable(List<Mine> mines) {
+            Map<Long, List<Mine>> columns = new HashMap<>();
+            for (Mine m : mines) {
+                addColumns(columns, m);
+            }
+            //Keep the table at most half full so probe chains stay short
+            int capacity = Integer.highestOneBit(Math.max(columns.size(), 1) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new Mine[capacity][];
+            mask = capacity - 1;
+            for (Map.Entry<Long, List<Mine>> entry : columns.entrySet()) {
+                long key = entry.getKey();
+                int slot = slot(key);
+                while (values[slot] != null)
+                    slot = (slot + 1) & mask;
+                keys[slot] = key;
+                values[slot] = entry.getValue().toArray(new Mine[0]);
+            }
+        }
+
+        private static long key(int chunkX, int chunkZ) {
+            return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        }
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private Mine[] getColumn(int chunkX, int chunkZ) {
+            long key = key(chunkX, chunkZ);
+            int slot = slot(key);
+            while (values[slot] != null) {
+                if (keys[slot] == key)
+                    return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private Mine get(int x, int y, int z) {
+            Mine[] candidates = getColumn(x >> 4, z >> 4);
+            if (candidates == null)
+                return null;
+            for (Mine m : candidates) {
+                if (m.getBounds().contains(x, y, z))
+                    return m;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.LapisMine;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each mine's occupant set up to date as players move around
+ * Movement is only evaluated when a player crosses a block boundary
+ * Players riding boats, minecarts or horses don't fire move events of their own, they are moved with their vehicle
+ */
+public class MineOccupancyListener implements Listener {
+
+    private final LapisMine plugin;
+    private final Map<UUID, Mine> currentMines = new ConcurrentHashMap<>();
+
+    /**
+     * Start tracking mine occupants, this registers the listener and checks every online player
+     *
+     * @param plugin The LapisMine plugin instance
+     */
+    public MineOccupancyListener(LapisMine plugin) {
+        this.plugin = plugin;
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        refresh();
+    }
+
+    /**
+     * Re-check the position of every online player
+     * This should be called when mines are added, removed or moved since no player movement will trigger it
+     */
+    public void refresh() {
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            update(p, p.getLocation());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent e) {
+        Location from = e.getFrom();
+        Location to = e.getTo();
+        if (to == null)
+            return;
+        //Looking around or moving within a block can't change which mine a player is in
+        if (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY()
+                && from.getBlockZ() == to.getBlockZ() && from.getWorld() == to.getWorld())
+            return;
+        update(e.getPlayer(), to);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onVehicleMove(VehicleMoveEvent e) {
+        Location from = e.getFrom();
+        Location to = e.getTo();
+        if (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY()
+                && from.getBlockZ() == to.getBlockZ() && from.getWorld() == to.getWorld())
+            return;
+        for (Entity passenger : e.getVehicle().getPassengers()) {
+            if (passenger instanceof Player p)
+                update(p, p.getLocation());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent e) {
+        if (e.getTo() == null)
+            return;
+        update(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent e) {
+        update(e.getPlayer(), e.getRespawnLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent e) {
+        update(e.getPlayer(), e.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent e) {
+        update(e.getPlayer(), e.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        Player p = e.getPlayer();
+        Mine previous = currentMines.remove(p.getUniqueId());
+        if (previous != null)
+            previous.removeOccupant(p);
+    }
+
+    private void update(Player p, Location loc) {
+        Mine mine = plugin.getMineAt(loc);
+        Mine previous = mine == null ? currentMines.remove(p.getUniqueId()) : currentMines.put(p.getUniqueId(), mine);
+        if (previous == mine)
+            return;
+        if (previous != null)
+            previous.removeOccupant(p);
+        if (mine != null)
+            mine.addOccupant(p);
+    }
+
+}
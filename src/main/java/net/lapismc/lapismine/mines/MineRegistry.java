@@ -0,0 +1,147 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Location;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores every loaded mine and keeps the spatial index in step with it
+ */
+public class MineRegistry {
+
+    private final List<Mine> mines = new ArrayList<>();
+    //Mines keyed by lower case name, so lookups don't scan every mine
+    private final Map<String, Mine> minesByName = new ConcurrentHashMap<>();
+    private final MineIndex index = new MineIndex();
+    //Sorted names for tab completion, rebuilt the first time they are needed after a mine is added or removed
+    //They are cleared and rebuilt while holding this registry's lock, so a list built before a change is never kept
+    private volatile List<String> names;
+
+    /**
+     * Start tracking a mine, unless it overlaps a mine that is already tracked
+     *
+     * @param mine The mine to add
+     * @return the tracked mine that the new mine overlaps, or null if it was added
+     */
+    public synchronized Mine add(Mine mine) {
+        Mine overlap = index.add(mine);
+        if (overlap != null)
+            return overlap;
+        mines.add(mine);
+        minesByName.put(mine.getName().toLowerCase(), mine);
+        names = null;
+        return null;
+    }
+
+    /**
+     * Start tracking several mines at once, mines that overlap a tracked mine or each other are skipped
+     *
+     * @param mines The mines to add
+     * @return the mines that were skipped, mapped to the mine each one overlaps
+     */
+    public synchronized Map<Mine, Mine> addAll(Collection<Mine> mines) {
+        Map<Mine, Mine> rejected = index.addAll(mines);
+        for (Mine mine : mines) {
+            if (rejected.containsKey(mine))
+                continue;
+            this.mines.add(mine);
+            minesByName.put(mine.getName().toLowerCase(), mine);
+        }
+        names = null;
+        return rejected;
+    }
+
+    /**
+     * Stop tracking a mine
+     *
+     * @param mine The mine to remove
+     */
+    public synchronized void remove(Mine mine) {
+        mines.remove(mine);
+        minesByName.remove(mine.getName().toLowerCase(), mine);
+        names = null;
+        index.remove(mine);
+    }
+
+    /**
+     * Get a mine using the mines name
+     *
+     * @param name The name of the mine, this is not case sensitive
+     * @return the Mine object for the given mine name, null if there is no Mine for that name
+     */
+    public Mine getMine(String name) {
+        if (name == null)
+            return null;
+        return minesByName.get(name.toLowerCase());
+    }
+
+    /**
+     * Get the names of every mine, sorted alphabetically
+     * The list is shared until a mine is added or removed, so it can't be modified
+     *
+     * @return an unmodifiable list of mine names
+     */
+    public List<String> getMineNames() {
+        List<String> current = names;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            //Another thread may have built the list while this one waited for the lock
+            if (names == null) {
+                List<String> sorted = new ArrayList<>(minesByName.size());
+                for (Mine m : minesByName.values()) {
+                    sorted.add(m.getName());
+                }
+                sorted.sort(String.CASE_INSENSITIVE_ORDER);
+                names = Collections.unmodifiableList(sorted);
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Get the mine that contains a location
+     *
+     * @param loc The location to check
+     * @return the Mine containing the location, null if the location isn't in a mine
+     */
+    public Mine getMineAt(Location loc) {
+        return index.getMineAt(loc);
+    }
+
+    /**
+     * Get a list of all mines
+     *
+     * @return a list containing all mines
+     */
+    public List<Mine> getMines() {
+        return mines;
+    }
+
+    /**
+     * Get the spatial index of these mines
+     *
+     * @return the mine index
+     */
+    public MineIndex getIndex() {
+        return index;
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.LapisMine;
+import net.lapismc.lapismine.storage.MineStorage;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saves mines in the background
+ * Changed mines are marked dirty and saved together a second later, so a burst of commands causes one write per mine.
+ * Mines are serialized on the server thread, then written on a single writer thread so writes stay in order.
+ * A mine whose YAML is the same as the last time it was written is skipped.
+ */
+public class MineSaveQueue {
+
+    private static final long FLUSH_DELAY_TICKS = 20;
+    private final LapisMine plugin;
+    private final MineStorage storage;
+    private final Set<Mine> dirty = ConcurrentHashMap.newKeySet();
+    //A hash of the YAML last written for, or loaded from, each mine, keyed by lower case name
+    private final Map<String, Long> lastWritten = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "LapisMine Saver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MineSaveQueue(LapisMine plugin, MineStorage storage) {
+        this.plugin = plugin;
+        this.storage = storage;
+    }
+
+    /**
+     * Queue a mine to be saved
+     *
+     * @param mine The mine that has changed
+     */
+    public void markDirty(Mine mine) {
+        dirty.add(mine);
+        if (flushScheduled.compareAndSet(false, true))
+            plugin.tasks.runTaskLater(this::flush, FLUSH_DELAY_TICKS, false);
+    }
+
+    /**
+     * Record the content a mine was loaded from, so that the file watcher ignores the unchanged file
+     *
+     * @param mineName The name of the mine
+     * @param content  The content of the mine's file
+     */
+    public void markLoaded(String mineName, String content) {
+        lastWritten.put(mineName.toLowerCase(), hash(content));
+    }
+
+    /**
+     * Check if a mine file holds exactly what was last written for it, so the file watcher can ignore our own saves
+     *
+     * @param mineName The name of the mine
+     * @param content  The current content of the mine's file
+     * @return true if the content is what this queue last wrote or loaded
+     */
+    public boolean isLastWritten(String mineName, String content) {
+        Long written = lastWritten.get(mineName.toLowerCase());
+        return written != null && written == hash(content);
+    }
+
+    /**
+     * Serialize every dirty mine and hand the changed ones to the writer
+     * This must run on the server thread
+     */
+    public void flush() {
+        flushScheduled.set(false);
+        boolean written = false;
+        for (Mine mine : dirty) {
+            dirty.remove(mine);
+            String content = serialize(mine);
+            long hash = hash(content);
+            Long previous = lastWritten.put(mine.getName().toLowerCase(), hash);
+            if (previous != null && previous == hash)
+                continue;
+            String mineName = mine.getName();
+            writer.execute(() -> write(mineName, content));
+            written = true;
+        }
+        //Forcing the storage once per batch is much cheaper than after every mine
+        if (written)
+            writer.execute(this::sync);
+    }
+
+    /**
+     * Save every dirty mine and wait for all writes to finish, then close the storage, used when the plugin disables
+     */
+    public void flushNow() {
+        flush();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                plugin.getLogger().warning("Timed out waiting for mines to save");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            storage.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to close the mine storage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copy mines into another storage, such as YAML files for editing by hand
+     * The mines are serialized now, on the server thread, and written after any saves that are already queued
+     *
+     * @param mines  The mines to copy
+     * @param target The storage to write them to
+     * @return a future completed with the number of mines written
+     */
+    public CompletableFuture<Integer> export(List<Mine> mines, MineStorage target) {
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (Mine mine : mines) {
+            contents.put(mine.getName(), serialize(mine));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                for (Map.Entry<String, String> entry : contents.entrySet()) {
+                    target.write(entry.getKey(), entry.getValue());
+                }
+                target.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return contents.size();
+        }, writer);
+    }
+
+    /**
+     * Forget a mine and remove it from storage, the delete runs after any write that is already queued for it
+     *
+     * @param mine The mine being deleted
+     */
+    public void delete(Mine mine) {
+        dirty.remove(mine);
+        lastWritten.remove(mine.getName().toLowerCase());
+        String mineName = mine.getName();
+        writer.execute(() -> {
+            try {
+                storage.delete(mineName);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Unable to delete the stored settings for " + mineName + ": " + e.getMessage());
+            }
+            sync();
+        });
+    }
+
+    private String serialize(Mine mine) {
+        YamlConfiguration config = new YamlConfiguration();
+        mine.writeTo(config);
+        return config.saveToString();
+    }
+
+    /**
+     * A 64 bit FNV-1a hash, only the hash of each mine's YAML is kept so that thousands of mines don't
+     * mean keeping a second copy of every file in memory
+     */
+    private long hash(String content) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            hash ^= content.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void sync() {
+        try {
+            storage.sync();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to force saved mines to disk: " + e.getMessage());
+        }
+    }
+
+    private void write(String mineName, String content) {
+        try {
+            storage.write(mineName, content);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save " + mineName + ": " + e.getMessage());
+        }
+    }
+
+}
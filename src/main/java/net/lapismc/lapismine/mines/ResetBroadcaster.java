@@ -0,0 +1,258 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.LapisMine;
+import net.lapismc.lapismine.scheduler.TimerWheel;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
+import org.bukkit.boss.BossBar;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends reset warnings and countdowns to the players in mines that are about to reset
+ * Each scheduled reset has a timer for when its warning or countdown window opens. While any mine is inside its
+ * window a single timer fires once a second and updates them all, so only mines that are about to reset are looked at.
+ * Resets are scheduled from command and region threads on Folia while the ticker runs on the global tick, so the maps
+ * are concurrent and the ticker works from a copy of the active resets.
+ */
+public class ResetBroadcaster {
+
+    private final LapisMine plugin;
+    //Resets whose window hasn't opened yet
+    private final Map<Mine, UpcomingReset> scheduled = new ConcurrentHashMap<>();
+    //Mines that are inside their warning or countdown window
+    private final Map<Mine, UpcomingReset> active = new ConcurrentHashMap<>();
+    //Each mine keeps its boss bar while it is loaded, rather than creating one for every countdown
+    private final Map<Mine, CountdownBar> bossBars = new ConcurrentHashMap<>();
+    private final TimerWheel.Timer ticker;
+
+    public ResetBroadcaster(LapisMine plugin) {
+        this.plugin = plugin;
+        ticker = plugin.timers.newTimer(this::broadcast);
+    }
+
+    /**
+     * Queue the warning and countdown for a mine's next reset
+     *
+     * @param mine      The mine that has been scheduled
+     * @param nextReset The system time it will reset at
+     */
+    void schedule(Mine mine, long nextReset) {
+        UpcomingReset previous = scheduled.remove(mine);
+        if (previous != null)
+            previous.windowTimer.cancel();
+        long warningMillis = plugin.getConfig().getLong("WarningTime") * 1000;
+        long countdownMillis = plugin.getConfig().getLong("CountdownTime") * 1000;
+        long window = Math.max(warningMillis, countdownMillis);
+        if (window <= 0)
+            return;
+        //A warning that should have been sent before now is skipped, e.g. the reset is due soon after startup
+        boolean warn = warningMillis > 0 && nextReset - System.currentTimeMillis() >= warningMillis;
+        UpcomingReset reset = new UpcomingReset(mine, nextReset, warn);
+        reset.windowTimer = plugin.timers.newTimer(() -> activate(reset));
+        reset.windowTimer.schedule(nextReset - window);
+        scheduled.put(mine, reset);
+    }
+
+    /**
+     * Stop any countdown for a mine and dispose of its boss bar, used when the mine is shut down
+     *
+     * @param mine The mine to stop broadcasting for
+     */
+    void remove(Mine mine) {
+        UpcomingReset reset = scheduled.remove(mine);
+        if (reset != null)
+            reset.windowTimer.cancel();
+        active.remove(mine);
+        CountdownBar bar = bossBars.remove(mine);
+        if (bar != null)
+            bar.hide();
+    }
+
+    /**
+     * Hide every boss bar, used when the plugin disables
+     */
+    public void shutdown() {
+        for (CountdownBar bar : bossBars.values()) {
+            bar.hide();
+        }
+        bossBars.clear();
+        for (UpcomingReset reset : scheduled.values()) {
+            reset.windowTimer.cancel();
+        }
+        scheduled.clear();
+        active.clear();
+        ticker.cancel();
+    }
+
+    private void activate(UpcomingReset reset) {
+        scheduled.remove(reset.mine, reset);
+        if (!reset.isCurrent())
+            return;
+        active.put(reset.mine, reset);
+        //Start the once a second updates if no other mine is in its window
+        if (!ticker.isScheduled())
+            ticker.schedule(System.currentTimeMillis());
+    }
+
+    private void broadcast() {
+        long now = System.currentTimeMillis();
+        if (active.isEmpty())
+            return;
+        //Keep updating every second until every active mine has reset
+        ticker.schedule(now + 1000);
+        //The config is read once a second for all mines, so edits to it are still picked up
+        String warningType = plugin.getConfig().getString("WarningType", "ActionBar");
+        String countdownType = plugin.getConfig().getString("CountdownType", "BossBar");
+        long warningTime = plugin.getConfig().getLong("WarningTime");
+        long countdownTime = plugin.getConfig().getLong("CountdownTime");
+        //Messages are rendered once per number of seconds left, mines resetting at the same time share them
+        Map<Long, String> warnings = new HashMap<>();
+        Map<Long, String> countdowns = new HashMap<>();
+        Map<Long, BaseComponent> countdownComponents = new HashMap<>();
+        for (UpcomingReset reset : new ArrayList<>(active.values())) {
+            Mine mine = reset.mine;
+            if (!reset.isCurrent() || reset.nextReset < now) {
+                //The mine has reset or been rescheduled, hide the countdown until its next window
+                //Only this reset is removed, the mine may have been activated again since the copy was taken
+                active.remove(mine, reset);
+                CountdownBar bar = bossBars.get(mine);
+                if (bar != null)
+                    bar.hide();
+                continue;
+            }
+            long secondsLeft = (reset.nextReset - now + 999) / 1000;
+            Set<Player> occupants = mine.getOccupants();
+            if (reset.warningPending && secondsLeft <= warningTime) {
+                reset.warningPending = false;
+                String warningMessage = warnings.computeIfAbsent(secondsLeft,
+                        s -> render(plugin.config.getMessage("Reset.Warning"), now, s));
+                sendWarning(occupants, warningType, warningMessage);
+            }
+            if (countdownTime <= 0 || secondsLeft > countdownTime)
+                continue;
+            String countdownMessage = countdowns.computeIfAbsent(secondsLeft,
+                    s -> render(plugin.config.getMessage("Reset.Countdown"), now, s));
+            if (countdownType.equalsIgnoreCase("BossBar")) {
+                double progress = Math.min(1, Math.max(0, (double) secondsLeft / countdownTime));
+                bossBars.computeIfAbsent(mine, m -> new CountdownBar()).show(countdownMessage, progress, occupants);
+            } else if (countdownType.equalsIgnoreCase("ActionBar")) {
+                BaseComponent component = countdownComponents.computeIfAbsent(secondsLeft,
+                        s -> TextComponent.fromLegacy(countdownMessage));
+                for (Player p : occupants) {
+                    p.spigot().sendMessage(ChatMessageType.ACTION_BAR, component);
+                }
+            }
+        }
+    }
+
+    private String render(String template, long now, long secondsLeft) {
+        return template.replace("%TimeUntilReset%",
+                plugin.prettyTime.getCleanTimeDifference(now + secondsLeft * 1000, 1));
+    }
+
+    private void sendWarning(Set<Player> occupants, String warningType, String warningMessage) {
+        if (occupants.isEmpty())
+            return;
+        if (warningType.equalsIgnoreCase("Title")) {
+            String title = plugin.config.getMessage("Reset.WarningTitle");
+            for (Player p : occupants) {
+                p.sendTitle(title, warningMessage, 10, 60, 10);
+            }
+        } else if (warningType.equalsIgnoreCase("ActionBar")) {
+            BaseComponent component = TextComponent.fromLegacy(warningMessage);
+            for (Player p : occupants) {
+                p.spigot().sendMessage(ChatMessageType.ACTION_BAR, component);
+            }
+        } else if (warningType.equalsIgnoreCase("Chat")) {
+            for (Player p : occupants) {
+                p.sendMessage(warningMessage);
+            }
+        }
+    }
+
+    private static class UpcomingReset {
+
+        private final Mine mine;
+        private final long nextReset;
+        private TimerWheel.Timer windowTimer;
+        private boolean warningPending;
+
+        UpcomingReset(Mine mine, long nextReset, boolean warningPending) {
+            this.mine = mine;
+            this.nextReset = nextReset;
+            this.warningPending = warningPending;
+        }
+
+        /**
+         * @return true if the mine is still scheduled to reset at this time
+         */
+        boolean isCurrent() {
+            return mine.getNextReset() == nextReset;
+        }
+    }
+
+    /**
+     * A mine's countdown boss bar and the players who can see it
+     */
+    private static class CountdownBar {
+
+        private final BossBar bar = Bukkit.createBossBar("", BarColor.BLUE, BarStyle.SOLID);
+        private final Set<Player> viewers = new HashSet<>();
+        private String title = "";
+
+        synchronized void show(String newTitle, double progress, Set<Player> occupants) {
+            //Each change is sent to every viewer, so only send what has changed
+            if (!newTitle.equals(title)) {
+                bar.setTitle(newTitle);
+                title = newTitle;
+            }
+            bar.setProgress(progress);
+            //Hide the boss bar from anyone who has left the mine, then show it to anyone new
+            Iterator<Player> it = viewers.iterator();
+            while (it.hasNext()) {
+                Player p = it.next();
+                if (!occupants.contains(p)) {
+                    bar.removePlayer(p);
+                    it.remove();
+                }
+            }
+            for (Player p : occupants) {
+                if (viewers.add(p))
+                    bar.addPlayer(p);
+            }
+            if (!bar.isVisible())
+                bar.setVisible(true);
+        }
+
+        synchronized void hide() {
+            bar.setVisible(false);
+            bar.removeAll();
+            viewers.clear();
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.scheduler.SectionSetTask;
+import org.bukkit.World;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Records the progress of a reset in a file next to the mine's YAML, so that a reset interrupted by a stop or crash
+ * can be finished when the plugin next enables
+ * The file starts with every section of the reset, then the index of each finished section is appended in batches
+ * on a background thread. The file is deleted once every section has been written.
+ */
+public class ResetJournal {
+
+    private static final int MAGIC = 0x4C4D524A;
+    //Version 2 added the reset number of hashed plans
+    private static final int FORMAT_VERSION = 2;
+    private final File file;
+    private final MineBounds bounds;
+    private final boolean replaceOnlyAir;
+    private final long resetCount;
+    private final BitSet mask;
+    private final int[] sections;
+    private final Executor writer;
+    private final int flushEvery;
+    //Finished sections waiting to be appended to the file
+    private final List<Integer> pending = new ArrayList<>();
+    private int remaining;
+    private boolean headerWritten = false;
+    private boolean closed = false;
+
+    /**
+     * Start a journal for a reset, the file is written on the writer rather than the calling thread
+     * This sets the journal on each of the sections
+     *
+     * @param file           The journal file, any existing journal is replaced
+     * @param bounds         The bounds of the mine
+     * @param replaceOnlyAir The replace only air setting the reset was started with
+     * @param resetCount     The reset number of a hashed plan, so it can be recreated exactly, -1 for other plans
+     * @param mask           The blocks being written, null if every block is
+     * @param sections       The sections of the reset
+     * @param writer         The executor to write the file on
+     * @param flushEvery     The number of sections to finish between writes
+     */
+    ResetJournal(File file, MineBounds bounds, boolean replaceOnlyAir, long resetCount, BitSet mask,
+                 List<SectionSetTask> sections, Executor writer, int flushEvery) {
+        this.file = file;
+        this.bounds = bounds;
+        this.replaceOnlyAir = replaceOnlyAir;
+        this.resetCount = resetCount;
+        this.mask = mask;
+        this.writer = writer;
+        this.flushEvery = Math.max(1, flushEvery);
+        this.sections = new int[sections.size() * 3];
+        for (int i = 0; i < sections.size(); i++) {
+            SectionSetTask section = sections.get(i);
+            this.sections[i * 3] = section.getChunkX();
+            this.sections[i * 3 + 1] = section.getSectionY();
+            this.sections[i * 3 + 2] = section.getChunkZ();
+            section.setJournal(this, i);
+        }
+        remaining = sections.size();
+        writer.execute(this::flush);
+    }
+
+    /**
+     * Record that a section has been written, this is safe to call from any thread
+     *
+     * @param index The index of the section
+     */
+    public void sectionComplete(int index) {
+        boolean write;
+        synchronized (this) {
+            if (closed)
+                return;
+            pending.add(index);
+            remaining--;
+            write = remaining == 0 || pending.size() >= flushEvery;
+        }
+        if (write)
+            writer.execute(this::flush);
+    }
+
+    /**
+     * Write any finished sections to the file, or delete it if the reset is complete
+     * This runs on the writer, but can be called directly to flush before the plugin disables
+     */
+    public synchronized void flush() {
+        if (closed)
+            return;
+        try {
+            if (remaining == 0) {
+                closed = true;
+                if (file.exists() && !file.delete())
+                    throw new IOException("Unable to delete " + file.getName());
+                return;
+            }
+            if (!headerWritten) {
+                writeHeader();
+                headerWritten = true;
+            }
+            if (pending.isEmpty())
+                return;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                for (int index : pending) {
+                    out.writeInt(index);
+                }
+            }
+            pending.clear();
+        } catch (IOException e) {
+            //Losing the journal only means an interrupted reset can't be resumed
+            closed = true;
+        }
+    }
+
+    /**
+     * Stop recording, used when a new reset replaces this one. The file is left for the new journal to replace
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    private void writeHeader() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(bounds.xMin);
+            out.writeInt(bounds.yMin);
+            out.writeInt(bounds.zMin);
+            out.writeInt(bounds.xMax);
+            out.writeInt(bounds.yMax);
+            out.writeInt(bounds.zMax);
+            out.writeBoolean(replaceOnlyAir);
+            out.writeLong(resetCount);
+            out.writeInt(sections.length / 3);
+            for (int value : sections) {
+                out.writeInt(value);
+            }
+            long[] words = mask == null ? null : mask.toLongArray();
+            out.writeInt(words == null ? -1 : words.length);
+            if (words != null) {
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the progress of an interrupted reset
+     *
+     * @param file   The journal file
+     * @param bounds The current bounds of the mine
+     * @return the progress of the reset, or null if the journal was written for different bounds
+     * @throws IOException if the file can't be read or isn't a journal
+     */
+    static Progress read(File file, MineBounds bounds) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(file.getName() + " is not a reset journal");
+            int version = in.readInt();
+            if (version < 1 || version > FORMAT_VERSION)
+                throw new IOException(file.getName() + " was written by an unknown version of LapisMine");
+            if (in.readInt() != bounds.xMin || in.readInt() != bounds.yMin || in.readInt() != bounds.zMin
+                    || in.readInt() != bounds.xMax || in.readInt() != bounds.yMax || in.readInt() != bounds.zMax)
+                return null;
+            boolean replaceOnlyAir = in.readBoolean();
+            long resetCount = version >= 2 ? in.readLong() : -1;
+            int[] sections = new int[in.readInt() * 3];
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = in.readInt();
+            }
+            int wordCount = in.readInt();
+            BitSet mask = null;
+            if (wordCount >= 0) {
+                long[] words = new long[wordCount];
+                for (int i = 0; i < wordCount; i++) {
+                    words[i] = in.readLong();
+                }
+                mask = BitSet.valueOf(words);
+            }
+            BitSet finished = new BitSet(sections.length / 3);
+            //Read finished sections until the end, a crash mid write can leave a partial int which is ignored
+            while (in.available() >= 4) {
+                int index = in.readInt();
+                if (index >= 0 && index < sections.length / 3)
+                    finished.set(index);
+            }
+            return new Progress(replaceOnlyAir, resetCount, mask, sections, finished);
+        }
+    }
+
+    /**
+     * The sections of an interrupted reset that still need to be written
+     *
+     * @param replaceOnlyAir The replace only air setting the reset was started with
+     * @param resetCount     The reset number of a hashed plan, -1 if the reset wasn't using one
+     * @param mask           The blocks the reset was writing, null for every block
+     * @param sections       The chunk x, section y and chunk z of every section in the reset
+     * @param finished       The indexes of the sections that were written
+     */
+    record Progress(boolean replaceOnlyAir, long resetCount, BitSet mask, int[] sections, BitSet finished) {
+
+        /**
+         * Create tasks for the sections that weren't written
+         *
+         * @param plan  The plan to write the remaining sections from
+         * @param world The world of the mine
+         * @return the remaining sections, in their original order
+         */
+        List<SectionSetTask> createRemaining(ResetPlan plan, World world) {
+            List<SectionSetTask> remaining = new ArrayList<>();
+            for (int i = 0; i < sections.length / 3; i++) {
+                if (finished.get(i))
+                    continue;
+                SectionSetTask section = new SectionSetTask(plan, world, sections[i * 3], sections[i * 3 + 1],
+                        sections[i * 3 + 2], replaceOnlyAir, mask);
+                if (section.getBlockCount() > 0)
+                    remaining.add(section);
+            }
+            return remaining;
+        }
+    }
+
+}
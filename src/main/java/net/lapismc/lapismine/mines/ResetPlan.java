@@ -0,0 +1,272 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.scheduler.SectionSetTask;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The material of every block for a single reset of a mine, stored as one palette index per block
+ * Plans are immutable once generated, so they can be built on a worker thread and handed to the server thread
+ * Generated plans use a byte per block, plans read from a {@link ResetTemplate} may pack two blocks into a byte
+ * Hashed plans store nothing per block, each block's material is worked out from its position when it is needed
+ */
+public class ResetPlan {
+
+    private static final int MAX_PALETTE_SIZE = 256;
+    private final MineBounds bounds;
+    private final Material surface;
+    private final int compositionVersion;
+    private final Material[] palette;
+    private final ByteBuffer blocks;
+    private final int bitsPerBlock;
+    //Only used by hashed plans, which have no blocks buffer
+    private final LayeredSampler sampler;
+    private final long resetSeed;
+    private final long resetCount;
+    private final int surfaceIndex;
+
+    ResetPlan(MineBounds bounds, Material surface, int compositionVersion, Material[] palette,
+              ByteBuffer blocks, int bitsPerBlock) {
+        this(bounds, surface, compositionVersion, palette, blocks, bitsPerBlock, null, 0, -1);
+    }
+
+    private ResetPlan(MineBounds bounds, Material surface, int compositionVersion, Material[] palette,
+                      ByteBuffer blocks, int bitsPerBlock, LayeredSampler sampler, long resetSeed, long resetCount) {
+        this.bounds = bounds;
+        this.surface = surface;
+        this.compositionVersion = compositionVersion;
+        this.palette = palette;
+        this.blocks = blocks;
+        this.bitsPerBlock = bitsPerBlock;
+        this.sampler = sampler;
+        this.resetSeed = resetSeed;
+        this.resetCount = resetCount;
+        surfaceIndex = surface == null ? -1 : Arrays.asList(palette).indexOf(surface);
+    }
+
+    /**
+     * Create a plan where each block's material depends only on the mine's seed, the reset number and its position
+     * Nothing is generated up front, so any section can be written on any thread in any order and the same
+     * reset number always gives exactly the same blocks, e.g. when an interrupted reset is resumed
+     *
+     * @param bounds             The bounds of the mine
+     * @param sampler            The compiled composition to pick from
+     * @param compositionVersion The version of the composition that the sampler was compiled from
+     * @param surface            The material for the top layer, null or air for no surface
+     * @param mineSeed           The seed of the mine
+     * @param resetCount         The number of the reset this plan is for
+     * @return the hashed plan
+     */
+    static ResetPlan hashed(MineBounds bounds, LayeredSampler sampler, int compositionVersion, Material surface,
+                            long mineSeed, long resetCount) {
+        boolean hasSurface = surface != null && surface != Material.AIR;
+        return new ResetPlan(bounds, hasSurface ? surface : null, compositionVersion,
+                createPalette(sampler.getPalette(), surface), null, 8, sampler,
+                CoordinateHash.resetSeed(mineSeed, resetCount), resetCount);
+    }
+
+    /**
+     * Pick a material for every block within the bounds
+     * This only reads its arguments, so it is safe to call from any thread as long as the sampler is already compiled
+     *
+     * @param bounds             The bounds of the mine
+     * @param sampler            The compiled composition to pick from
+     * @param compositionVersion The version of the composition that the sampler was compiled from
+     * @param surface            The material for the top layer, null or air for no surface
+     * @return the generated plan
+     */
+    static ResetPlan generate(MineBounds bounds, LayeredSampler sampler, int compositionVersion, Material surface) {
+        boolean hasSurface = surface != null && surface != Material.AIR;
+        Material[] palette = createPalette(sampler.getPalette(), surface);
+        int surfaceIndex = hasSurface ? Arrays.asList(palette).indexOf(surface) : -1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] blocks = new byte[bounds.getVolume()];
+        int layerSize = (bounds.xMax - bounds.xMin + 1) * (bounds.zMax - bounds.zMin + 1);
+        int index = 0;
+        for (int y = bounds.yMin; y <= bounds.yMax; y++) {
+            if (y == bounds.yMax && hasSurface) {
+                //yMax is the top layer, if we have a surface set then this whole layer should be set as it
+                Arrays.fill(blocks, index, index + layerSize, (byte) surfaceIndex);
+                index += layerSize;
+                continue;
+            }
+            //Samplers only change between levels, so each block costs the same as with a single composition
+            AliasSampler level = sampler.forY(y);
+            for (int i = 0; i < layerSize; i++) {
+                blocks[index++] = (byte) level.nextIndex(random);
+            }
+        }
+        return new ResetPlan(bounds, hasSurface ? surface : null, compositionVersion, palette, ByteBuffer.wrap(blocks), 8);
+    }
+
+    private static Material[] createPalette(Material[] samplerPalette, Material surface) {
+        Material[] palette = samplerPalette;
+        if (surface != null && surface != Material.AIR && !Arrays.asList(samplerPalette).contains(surface)) {
+            //The surface isn't part of the composition, give it its own palette entry
+            palette = Arrays.copyOf(samplerPalette, samplerPalette.length + 1);
+            palette[samplerPalette.length] = surface;
+        }
+        if (palette.length > MAX_PALETTE_SIZE)
+            throw new IllegalStateException("A reset plan can hold at most " + MAX_PALETTE_SIZE + " materials");
+        return palette;
+    }
+
+    /**
+     * Check if this plan still matches the mine it was generated for
+     *
+     * @param bounds             The current bounds of the mine
+     * @param compositionVersion The current version of the mine's composition
+     * @param surface            The current surface of the mine
+     * @return true if nothing that affects the plan has changed
+     */
+    boolean isCurrent(MineBounds bounds, int compositionVersion, Material surface) {
+        Material currentSurface = surface == Material.AIR ? null : surface;
+        return this.bounds == bounds && this.compositionVersion == compositionVersion && this.surface == currentSurface;
+    }
+
+    /**
+     * Split this plan into chunk section tasks, ordered from the top of the mine down
+     *
+     * @param world          The world to place the blocks in
+     * @param replaceOnlyAir True if only air blocks should be replaced
+     * @param mask           The blocks to write, indexed by {@link MineBounds#indexOf(int, int, int)}, null to write every block
+     * @return a task for each chunk section that has at least one block to write
+     */
+    public List<SectionSetTask> createSections(World world, boolean replaceOnlyAir, BitSet mask) {
+        List<SectionSetTask> sections = new ArrayList<>();
+        for (int sectionY = bounds.yMax >> 4; sectionY >= bounds.yMin >> 4; sectionY--) {
+            for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+                for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                    SectionSetTask section = new SectionSetTask(this, world, chunkX, sectionY, chunkZ, replaceOnlyAir, mask);
+                    if (section.getBlockCount() > 0)
+                        sections.add(section);
+                }
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Split this plan into chunk section tasks for a replace only air reset, ordered from the top of the mine down
+     * Sections in chunks that were scanned only write the blocks the scan found to be air, without reading them again
+     *
+     * @param world The world to place the blocks in
+     * @param air   The air blocks found by scanning the mine
+     * @return a task for each chunk section that has at least one block to write
+     */
+    List<SectionSetTask> createSections(World world, AirMask air) {
+        List<SectionSetTask> sections = new ArrayList<>();
+        for (int sectionY = bounds.yMax >> 4; sectionY >= bounds.yMin >> 4; sectionY--) {
+            for (int chunkX = bounds.xMin >> 4; chunkX <= bounds.xMax >> 4; chunkX++) {
+                for (int chunkZ = bounds.zMin >> 4; chunkZ <= bounds.zMax >> 4; chunkZ++) {
+                    SectionSetTask section = new SectionSetTask(this, world, chunkX, sectionY, chunkZ,
+                            !air.isScanned(chunkX, chunkZ), air.getBlocks());
+                    if (section.getBlockCount() > 0)
+                        sections.add(section);
+                }
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Get the planned material for a block
+     *
+     * @param x The block x coordinate, must be within the bounds
+     * @param y The block y coordinate, must be within the bounds
+     * @param z The block z coordinate, must be within the bounds
+     * @return the material to place at this position
+     */
+    public Material getMaterial(int x, int y, int z) {
+        if (blocks == null)
+            return palette[getHashedIndex(x, y, z)];
+        return palette[getPaletteIndex(bounds.indexOf(x, y, z))];
+    }
+
+    /**
+     * Get the palette index stored for a block
+     * Absolute reads are used so that a shared buffer can be read from several threads
+     *
+     * @param index The index of the block, see {@link MineBounds#indexOf(int, int, int)}
+     * @return the index of the block's material in the palette
+     */
+    int getPaletteIndex(int index) {
+        if (blocks == null) {
+            //Work the position back out from the index, x is the fastest changing, then z, then y
+            int width = bounds.xMax - bounds.xMin + 1;
+            int depth = bounds.zMax - bounds.zMin + 1;
+            int row = index / width;
+            return getHashedIndex(bounds.xMin + index % width, bounds.yMin + row / depth, bounds.zMin + row % depth);
+        }
+        if (bitsPerBlock == 8)
+            return blocks.get(index) & 0xFF;
+        //Two blocks per byte, the even block is in the low nibble
+        return (blocks.get(index >>> 1) >>> ((index & 1) << 2)) & 0xF;
+    }
+
+    private int getHashedIndex(int x, int y, int z) {
+        if (surfaceIndex >= 0 && y == bounds.yMax)
+            return surfaceIndex;
+        return sampler.forY(y).indexOf(CoordinateHash.hash(resetSeed, x, y, z));
+    }
+
+    /**
+     * Get the reset number a hashed plan was created for
+     *
+     * @return the reset number, or -1 if this plan was generated randomly or read from a template
+     */
+    long getResetCount() {
+        return resetCount;
+    }
+
+    /**
+     * Get the materials this plan picks from
+     *
+     * @return the palette, this must not be modified
+     */
+    Material[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Get the surface material of this plan
+     *
+     * @return the material of the top layer, null if there is no surface
+     */
+    Material getSurface() {
+        return surface;
+    }
+
+    /**
+     * Get the bounds this plan covers
+     *
+     * @return the bounds of the mine when this plan was generated
+     */
+    public MineBounds getBounds() {
+        return bounds;
+    }
+
+}
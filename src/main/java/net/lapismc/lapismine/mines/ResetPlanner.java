@@ -0,0 +1,267 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import net.lapismc.lapismine.LapisMine;
+
+import java.util.*;
+
+/**
+ * Decides when each mine resets next, so that mines don't all reset at once
+ * Mines with the same reset frequency are given evenly spaced slots across their period, and each mine's next reset
+ * is the slot closest to one period after its last reset. A mine that was already in its slot keeps resetting exactly
+ * once per period, a mine that wasn't moves into its slot within one reset. A mine that became due while the server
+ * was offline doesn't wait for its own slot, it takes the earliest slot that no other mine has been planned for.
+ */
+public class ResetPlanner {
+
+    //Never plan a reset sooner than this, so a restart doesn't reset every overdue mine in the first tick
+    private static final long MIN_LEAD_MILLIS = 5_000;
+    private final LapisMine plugin;
+    //The names of the registered mines for each reset frequency, sorted so a mine's slot is found with a binary search
+    private final Map<Integer, List<String>> groups = new HashMap<>();
+
+    public ResetPlanner(LapisMine plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start planning a mine alongside the others with its reset frequency
+     *
+     * @param mine The mine that has been registered
+     */
+    public synchronized void add(Mine mine) {
+        insert(mine.getResetFrequency(), mine.getName());
+    }
+
+    /**
+     * Start planning several mines alongside the others with their reset frequencies
+     *
+     * @param mines The mines that have been registered
+     */
+    public synchronized void addAll(Collection<Mine> mines) {
+        for (Mine mine : mines) {
+            groups.computeIfAbsent(mine.getResetFrequency(), k -> new ArrayList<>()).add(mine.getName());
+        }
+        //Sorting once is much cheaper than inserting every mine into its place separately
+        for (List<String> group : groups.values()) {
+            group.sort(String.CASE_INSENSITIVE_ORDER);
+            //A mine that was already in its group isn't listed twice
+            for (int i = group.size() - 1; i > 0; i--) {
+                if (String.CASE_INSENSITIVE_ORDER.compare(group.get(i), group.get(i - 1)) == 0)
+                    group.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Stop planning a mine, the slots of the other mines with its frequency are spread out again as they reset
+     *
+     * @param mine The mine that has been removed
+     */
+    public synchronized void remove(Mine mine) {
+        delete(mine.getResetFrequency(), mine.getName());
+    }
+
+    /**
+     * Move a registered mine to the group for its new reset frequency
+     * Mines that aren't registered yet are left out, they are added when they are registered
+     *
+     * @param mine         The mine whose frequency has changed
+     * @param oldFrequency The frequency the mine was planned with before
+     */
+    public synchronized void frequencyChanged(Mine mine, int oldFrequency) {
+        if (oldFrequency != mine.getResetFrequency() && delete(oldFrequency, mine.getName()))
+            insert(mine.getResetFrequency(), mine.getName());
+    }
+
+    /**
+     * Work out when a mine should next reset
+     *
+     * @param mine The mine to plan, it doesn't need to be registered yet
+     * @param now  The current system time
+     * @return the system time the mine should reset at
+     */
+    public long planNextReset(Mine mine, long now) {
+        if (!isOverdue(mine, now))
+            return planNextReset(mine, getPhase(mine), now);
+        NavigableSet<Long> taken = new TreeSet<>();
+        for (String name : getGroup(mine.getResetFrequency())) {
+            Mine other = plugin.getMine(name);
+            if (other != null && other != mine && other.getNextReset() > 0)
+                taken.add(other.getNextReset());
+        }
+        return new SlotCursor(mine.getResetFrequency(), now).next(taken);
+    }
+
+    private long planNextReset(Mine mine, long phase, long now) {
+        long period = getPeriod(mine);
+        //A mine that has never reset waits a full period, just like a newly created mine always has
+        long target = (mine.getLastReset() == 0 ? now : mine.getLastReset()) + period;
+        //The slot nearest the target, this may be up to half a period either side of it
+        long slot = Math.floorDiv(target - phase, period) * period + phase;
+        if (target - slot > period / 2)
+            slot += period;
+        //A target that is only just past still uses the mine's own slot
+        while (slot < now + MIN_LEAD_MILLIS) {
+            slot += period;
+        }
+        return slot;
+    }
+
+    /**
+     * Check if a mine should have reset already, e.g. it became due while the server was offline
+     */
+    private boolean isOverdue(Mine mine, long now) {
+        return mine.getLastReset() != 0 && mine.getLastReset() + getPeriod(mine) < now + MIN_LEAD_MILLIS;
+    }
+
+    /**
+     * Plan every registered mine again, used once all mines have loaded and the slots are known
+     * Mines that are on time are planned first, then overdue mines fill the earliest slots that are left, starting
+     * with the mine that has waited longest
+     */
+    public void replanAll() {
+        long now = System.currentTimeMillis();
+        Map<Integer, List<Mine>> overdue = new HashMap<>();
+        Map<Integer, NavigableSet<Long>> taken = new HashMap<>();
+        for (Mine m : plugin.getMines()) {
+            if (isOverdue(m, now)) {
+                overdue.computeIfAbsent(m.getResetFrequency(), k -> new ArrayList<>()).add(m);
+                continue;
+            }
+            long next = planNextReset(m, getPhase(m), now);
+            m.scheduleReset(next);
+            taken.computeIfAbsent(m.getResetFrequency(), k -> new TreeSet<>()).add(next);
+        }
+        for (Map.Entry<Integer, List<Mine>> entry : overdue.entrySet()) {
+            List<Mine> group = entry.getValue();
+            group.sort(Comparator.comparingLong(Mine::getLastReset));
+            NavigableSet<Long> groupTaken = taken.computeIfAbsent(entry.getKey(), k -> new TreeSet<>());
+            //The cursor only moves forward, so filling a whole group of overdue mines is one pass over its slots
+            SlotCursor cursor = new SlotCursor(entry.getKey(), now);
+            for (Mine m : group) {
+                long next = cursor.next(groupTaken);
+                m.scheduleReset(next);
+                groupTaken.add(next);
+            }
+        }
+    }
+
+    /**
+     * Get the registered mines ordered by when they next reset
+     *
+     * @return a new list of mines, soonest first
+     */
+    public List<Mine> getTimeline() {
+        List<Mine> timeline = new ArrayList<>(plugin.getMines());
+        timeline.sort(Comparator.comparingLong(Mine::getNextReset));
+        return timeline;
+    }
+
+    /**
+     * Get the offset of a mine's slot within its period
+     * Mines sharing a frequency are ordered by name, so the slots are the same after every restart
+     */
+    private synchronized long getPhase(Mine mine) {
+        List<String> group = groups.getOrDefault(mine.getResetFrequency(), Collections.emptyList());
+        int index = Collections.binarySearch(group, mine.getName(), String.CASE_INSENSITIVE_ORDER);
+        int size = group.size();
+        //A mine that isn't registered yet is planned as if it had been inserted into its group
+        if (index < 0) {
+            index = -index - 1;
+            size++;
+        }
+        return getPeriod(mine) * index / size;
+    }
+
+    private synchronized List<String> getGroup(int frequency) {
+        return new ArrayList<>(groups.getOrDefault(frequency, Collections.emptyList()));
+    }
+
+    private synchronized int getGroupSize(int frequency) {
+        List<String> group = groups.get(frequency);
+        return group == null ? 0 : group.size();
+    }
+
+    private void insert(int frequency, String name) {
+        List<String> group = groups.computeIfAbsent(frequency, k -> new ArrayList<>());
+        int index = Collections.binarySearch(group, name, String.CASE_INSENSITIVE_ORDER);
+        //A mine that is already in its group isn't listed twice
+        if (index < 0)
+            group.add(-index - 1, name);
+    }
+
+    private boolean delete(int frequency, String name) {
+        List<String> group = groups.get(frequency);
+        if (group == null)
+            return false;
+        int index = Collections.binarySearch(group, name, String.CASE_INSENSITIVE_ORDER);
+        if (index < 0)
+            return false;
+        group.remove(index);
+        if (group.isEmpty())
+            groups.remove(frequency);
+        return true;
+    }
+
+    private long getPeriod(Mine mine) {
+        return Math.max(1, mine.getResetFrequency()) * 60_000L;
+    }
+
+    /**
+     * Walks through the slots of a frequency in time order, from the first one that is far enough away
+     */
+    private final class SlotCursor {
+
+        private final long period;
+        private final int size;
+        private final long earliest;
+        private long cycle;
+        private int index;
+
+        private SlotCursor(int frequency, long now) {
+            period = Math.max(1, frequency) * 60_000L;
+            size = Math.max(1, getGroupSize(frequency));
+            earliest = now + MIN_LEAD_MILLIS;
+            cycle = Math.floorDiv(earliest, period);
+        }
+
+        /**
+         * Find the next slot that no planned reset is within half a slot of, and move past it
+         *
+         * @param taken The times other mines are planned to reset at
+         * @return the time of the free slot
+         */
+        private long next(NavigableSet<Long> taken) {
+            long halfSlot = Math.max(1, period / size / 2);
+            while (true) {
+                long slot = cycle * period + period * index / size;
+                if (++index == size) {
+                    index = 0;
+                    cycle++;
+                }
+                if (slot < earliest)
+                    continue;
+                Long nearest = taken.ceiling(slot - halfSlot);
+                if (nearest == null || nearest >= slot + halfSlot)
+                    return slot;
+            }
+        }
+    }
+
+}
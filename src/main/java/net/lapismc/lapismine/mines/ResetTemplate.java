@@ -0,0 +1,234 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Material;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A pre-rolled reset plan stored in a file next to the mine's YAML, so that every reset uses the same layout
+ * The file holds a material palette and a packed palette index for every block, 4 bits when there are 16 or fewer
+ * materials, otherwise 8. It is memory mapped when read, so the layout isn't copied onto the heap.
+ */
+public class ResetTemplate {
+
+    private static final int MAGIC = 0x4C4D5450;
+    private static final int FORMAT_VERSION = 1;
+    private final File file;
+    private int regenerateEvery;
+    private int resetsSinceGenerated = 0;
+    private boolean regenerateRequested = false;
+    private ResetPlan plan;
+
+    /**
+     * Nothing is read until the template is first needed
+     *
+     * @param file            The template file, it doesn't need to exist yet
+     * @param regenerateEvery The number of resets before the layout is rolled again, 0 to only regenerate on demand
+     */
+    public ResetTemplate(File file, int regenerateEvery) {
+        this.file = file;
+        this.regenerateEvery = regenerateEvery;
+    }
+
+    /**
+     * Get the plan stored in the template, regenerating it first if it is out of date or due to be rolled again
+     * This does file IO, so it should be run on a worker thread where possible
+     *
+     * @param bounds             The current bounds of the mine
+     * @param sampler            The compiled composition, used if the template needs to be generated
+     * @param compositionVersion The current version of the composition
+     * @param fingerprint        The current fingerprint of the composition, see {@link Composition#getFingerprint()}
+     * @param surface            The current surface material, null for none
+     * @return a plan matching the current state of the mine
+     */
+    synchronized ResetPlan getPlan(MineBounds bounds, LayeredSampler sampler, int compositionVersion,
+                                   int fingerprint, Material surface) {
+        boolean regenerateDue = regenerateRequested || (regenerateEvery > 0 && resetsSinceGenerated >= regenerateEvery);
+        if (plan == null && !regenerateDue && file.exists()) {
+            try {
+                plan = read(bounds, compositionVersion, fingerprint);
+            } catch (IOException e) {
+                plan = null;
+            }
+        }
+        if (!regenerateDue && plan != null && plan.isCurrent(bounds, compositionVersion, surface))
+            return plan;
+        ResetPlan generated = ResetPlan.generate(bounds, sampler, compositionVersion, surface);
+        regenerateRequested = false;
+        resetsSinceGenerated = 0;
+        try {
+            write(generated, fingerprint);
+            //Drop the old mapping before reading the new file, the old buffer is unmapped when it is collected
+            plan = null;
+            plan = read(bounds, compositionVersion, fingerprint);
+        } catch (IOException e) {
+            //Some platforms won't replace a file that is still mapped, use the layout from memory until next time
+            plan = null;
+        }
+        if (plan == null)
+            plan = generated;
+        return plan;
+    }
+
+    /**
+     * Count a reset that used this template, this is what triggers regeneration every N resets
+     */
+    synchronized void markUsed() {
+        resetsSinceGenerated++;
+    }
+
+    /**
+     * Roll a new layout the next time the template is used
+     */
+    public synchronized void requestRegenerate() {
+        regenerateRequested = true;
+    }
+
+    /**
+     * Get the number of resets between regenerations
+     *
+     * @return the number of resets a layout is used for, 0 if it is only regenerated on demand
+     */
+    public synchronized int getRegenerateEvery() {
+        return regenerateEvery;
+    }
+
+    /**
+     * Set the number of resets between regenerations
+     *
+     * @param regenerateEvery The number of resets a layout is used for, 0 to only regenerate on demand
+     */
+    public synchronized void setRegenerateEvery(int regenerateEvery) {
+        this.regenerateEvery = regenerateEvery;
+    }
+
+    /**
+     * Get the file this template is stored in
+     *
+     * @return the template file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Forget the loaded layout and remove the file
+     *
+     * @return true if there is no file left behind
+     */
+    public synchronized boolean delete() {
+        plan = null;
+        return !file.exists() || file.delete();
+    }
+
+    private void write(ResetPlan plan, int fingerprint) throws IOException {
+        MineBounds bounds = plan.getBounds();
+        Material[] palette = plan.getPalette();
+        int volume = bounds.getVolume();
+        int bitsPerBlock = palette.length <= 16 ? 4 : 8;
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(bounds.xMin);
+            out.writeInt(bounds.yMin);
+            out.writeInt(bounds.zMin);
+            out.writeInt(bounds.xMax);
+            out.writeInt(bounds.yMax);
+            out.writeInt(bounds.zMax);
+            out.writeInt(fingerprint);
+            writeString(out, plan.getSurface() == null ? "" : plan.getSurface().name());
+            out.writeInt(palette.length);
+            for (Material mat : palette) {
+                writeString(out, mat.name());
+            }
+            out.writeByte(bitsPerBlock);
+            if (bitsPerBlock == 8) {
+                out.writeInt(volume);
+                for (int i = 0; i < volume; i++) {
+                    out.writeByte(plan.getPaletteIndex(i));
+                }
+            } else {
+                out.writeInt((volume + 1) >>> 1);
+                for (int i = 0; i < volume; i += 2) {
+                    int high = i + 1 < volume ? plan.getPaletteIndex(i + 1) : 0;
+                    out.writeByte(plan.getPaletteIndex(i) | (high << 4));
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map the template file and check it against the mine
+     *
+     * @return the stored plan, or null if it was generated for different bounds or a different composition
+     */
+    private ResetPlan read(MineBounds bounds, int compositionVersion, int fingerprint) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            //The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+            throw new IOException(file.getName() + " is not a reset template");
+        int[] saved = {buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()};
+        if (saved[0] != bounds.xMin || saved[1] != bounds.yMin || saved[2] != bounds.zMin
+                || saved[3] != bounds.xMax || saved[4] != bounds.yMax || saved[5] != bounds.zMax)
+            return null;
+        if (buffer.getInt() != fingerprint)
+            return null;
+        String surfaceName = readString(buffer);
+        Material surface = surfaceName.isEmpty() ? null : Material.getMaterial(surfaceName);
+        Material[] palette = new Material[buffer.getInt()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = Material.getMaterial(readString(buffer));
+            if (palette[i] == null)
+                return null;
+        }
+        int bitsPerBlock = buffer.get();
+        int length = buffer.getInt();
+        int expected = bitsPerBlock == 8 ? bounds.getVolume() : (bounds.getVolume() + 1) >>> 1;
+        if ((bitsPerBlock != 4 && bitsPerBlock != 8) || length != expected || buffer.remaining() < length)
+            throw new IOException(file.getName() + " is truncated or corrupt");
+        ByteBuffer blocks = buffer.slice();
+        blocks.limit(length);
+        return new ResetPlan(bounds, surface, compositionVersion, palette, blocks, bitsPerBlock);
+    }
+
+    private void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
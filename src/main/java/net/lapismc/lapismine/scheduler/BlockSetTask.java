@@ -1,40 +0,0 @@
-/*
- * Copyright 2025 Benjamin Martin
- *
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- *
- *        http://www.apache.org/licenses/LICENSE-2.0
- *
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- */
-
-package net.lapismc.lapismine.scheduler;
-
-import org.bukkit.Location;
-import org.bukkit.Material;
-
-public class BlockSetTask implements MineTask {
-
-    private final Location loc;
-    private final Material mat;
-
-    public BlockSetTask(Location loc, Material mat) {
-        this.loc = loc;
-        this.mat = mat;
-    }
-
-    @Override
-    public void run() {
-        loc.getBlock().setType(mat);
-    }
-
-    public Location getLocation() {
-        return loc;
-    }
-}
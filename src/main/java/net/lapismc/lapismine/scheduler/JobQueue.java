@@ -0,0 +1,95 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+
+/**
+ * The sections of one reset that fall within one region
+ * This is only touched by the thread draining its region once it has been handed over
+ */
+class JobQueue {
+
+    private final ResetJob job;
+    private final Queue<SectionSetTask> sections;
+    private int deficit = 0;
+    private int blocksThisTick = 0;
+
+    JobQueue(ResetJob job, Collection<SectionSetTask> sections) {
+        this.job = job;
+        this.sections = new ArrayDeque<>(sections);
+    }
+
+    ResetJob getJob() {
+        return job;
+    }
+
+    boolean isEmpty() {
+        return sections.isEmpty();
+    }
+
+    int size() {
+        return sections.size();
+    }
+
+    /**
+     * Start a new tick, clearing the blocks counted against the job's per tick cap
+     */
+    void newTick() {
+        blocksThisTick = 0;
+    }
+
+    /**
+     * Check if this job has hit its per tick cap, the cap is checked per section so it may be passed by one section
+     *
+     * @return true if no more sections should be written for this job this tick
+     */
+    boolean isCapped() {
+        int cap = job.getBlocksPerTick();
+        return cap > 0 && blocksThisTick >= cap;
+    }
+
+    /**
+     * Give this job its share of blocks for the current round
+     *
+     * @param quantum The number of blocks each job may write per round
+     */
+    void addQuantum(int quantum) {
+        deficit += quantum;
+    }
+
+    /**
+     * Get the next section if this job's share for the round covers it
+     *
+     * @return the next section to write, or null if the job has used its share or has nothing left
+     */
+    SectionSetTask poll() {
+        SectionSetTask next = sections.peek();
+        if (next == null) {
+            deficit = 0;
+            return null;
+        }
+        if (next.getBlockCount() > deficit)
+            return null;
+        deficit -= next.getBlockCount();
+        blocksThisTick += next.getBlockCount();
+        return sections.poll();
+    }
+
+}
@@ -17,63 +17,227 @@
 package net.lapismc.lapismine.scheduler;
 
 import net.lapismc.lapismine.LapisMine;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LapisMineRunnable implements Runnable {
 
+    //Folia builds regions out of sections of 16x16 chunks by default, so work within 256 blocks always shares a region
+    private static final int REGION_SHIFT = 8;
+    //How long a region's queue is kept after it runs out of work, a minute at 20 TPS
+    private static final long IDLE_QUEUE_TICKS = 1200;
     private final LapisMine plugin;
-    private final double maxMillisPerTick = 5;
-    private final Deque<MineTask> taskDeque = new ArrayDeque<>();
-    private final TickTimeStorage tickTimeStorage;
-    private double currentMillisPerTick = maxMillisPerTick;
+    private final double targetTickMillis;
+    private final double minMillisPerTick;
+    private final double maxMillisPerTick;
+    private final boolean folia;
+    //Work that isn't tied to a location, and on servers without regions, all work
+    private final RegionQueue globalQueue;
+    private final Map<RegionKey, RegionQueue> regionQueues = new ConcurrentHashMap<>();
+    private final RegionBudgets regionBudgets;
+    private final AtomicLong currentTick = new AtomicLong();
 
     public LapisMineRunnable(LapisMine plugin) {
         this.plugin = plugin;
-        tickTimeStorage = new TickTimeStorage(25);
+        targetTickMillis = plugin.getConfig().getDouble("Scheduler.TargetTickTime", 40);
+        minMillisPerTick = plugin.getConfig().getDouble("Scheduler.MinMillisPerTick", 1);
+        maxMillisPerTick = plugin.getConfig().getDouble("Scheduler.MaxMillisPerTick", 10);
+        folia = isFolia();
+        globalQueue = new RegionQueue(null, createBudget(), new ServerTickTime(), null);
+        regionBudgets = new RegionBudgets(this::createBudget);
         plugin.tasks.runTaskTimer(this, 1, 1, false);
-        //Start delayed a bit so that the values have time to come in
-        plugin.tasks.runTaskTimer(() -> currentMillisPerTick += calculateAdjustment(), 20 * 10, 20, false);
     }
 
     public void addTask(MineTask task) {
-        taskDeque.add(task);
+        if (folia && task instanceof SectionSetTask) {
+            Location loc = ((SectionSetTask) task).getLocation();
+            RegionKey key = getRegionKey(loc);
+            if (key != null) {
+                //Added inside compute so that an idle queue can't be removed between being found and being added to
+                regionQueues.compute(key, (k, queue) -> {
+                    RegionQueue q = queue != null ? queue : createQueue(loc);
+                    q.add(task, currentTick.get());
+                    return q;
+                });
+                return;
+            }
+        }
+        globalQueue.add(task, currentTick.get());
+    }
+
+    /**
+     * Queue the sections of a reset, they share the tick budget fairly with any other resets in progress
+     *
+     * @param job      The reset the sections belong to
+     * @param sections The sections to write, in the order they should be written
+     */
+    public void addReset(ResetJob job, List<SectionSetTask> sections) {
+        if (sections.isEmpty())
+            return;
+        if (!folia) {
+            globalQueue.addJob(new JobQueue(job, sections), currentTick.get());
+            return;
+        }
+        //Each region works through its own share of the reset, keeping the order within each region
+        Map<RegionKey, List<SectionSetTask>> byRegion = new LinkedHashMap<>();
+        List<SectionSetTask> global = new ArrayList<>();
+        for (SectionSetTask section : sections) {
+            RegionKey key = getRegionKey(section.getLocation());
+            if (key == null)
+                global.add(section);
+            else
+                byRegion.computeIfAbsent(key, k -> new ArrayList<>()).add(section);
+        }
+        for (Map.Entry<RegionKey, List<SectionSetTask>> entry : byRegion.entrySet()) {
+            Location loc = entry.getValue().get(0).getLocation();
+            JobQueue jobQueue = new JobQueue(job, entry.getValue());
+            regionQueues.compute(entry.getKey(), (k, queue) -> {
+                RegionQueue q = queue != null ? queue : createQueue(loc);
+                q.addJob(jobQueue, currentTick.get());
+                return q;
+            });
+        }
+        if (!global.isEmpty())
+            globalQueue.addJob(new JobQueue(job, global), currentTick.get());
+    }
+
+    /**
+     * Take a snapshot of every loaded chunk in a range, each on the thread that owns it
+     * On Folia the chunks are grouped by region and each region takes its own snapshots, otherwise they are taken
+     * straight away, so this must be called from the server thread. Unloaded chunks are skipped rather than loaded.
+     *
+     * @param world     The world the chunks are in
+     * @param minChunkX The lowest chunk x coordinate
+     * @param minChunkZ The lowest chunk z coordinate
+     * @param maxChunkX The highest chunk x coordinate
+     * @param maxChunkZ The highest chunk z coordinate
+     * @return a future completed with the snapshots once every region has taken them
+     */
+    public CompletableFuture<List<ChunkSnapshot>> snapshotChunks(World world, int minChunkX, int minChunkZ,
+                                                                  int maxChunkX, int maxChunkZ) {
+        if (!folia)
+            return CompletableFuture.completedFuture(takeSnapshots(world, minChunkX, minChunkZ, maxChunkX, maxChunkZ));
+        //Regions are aligned to whole chunks, so each region covers a rectangle of the range
+        int chunkShift = REGION_SHIFT - 4;
+        List<CompletableFuture<List<ChunkSnapshot>>> regions = new ArrayList<>();
+        for (int regionX = minChunkX >> chunkShift; regionX <= maxChunkX >> chunkShift; regionX++) {
+            for (int regionZ = minChunkZ >> chunkShift; regionZ <= maxChunkZ >> chunkShift; regionZ++) {
+                int fromX = Math.max(minChunkX, regionX << chunkShift);
+                int fromZ = Math.max(minChunkZ, regionZ << chunkShift);
+                int toX = Math.min(maxChunkX, ((regionX + 1) << chunkShift) - 1);
+                int toZ = Math.min(maxChunkZ, ((regionZ + 1) << chunkShift) - 1);
+                CompletableFuture<List<ChunkSnapshot>> region = new CompletableFuture<>();
+                plugin.tasks.runRegionalTaskNow(() -> {
+                    try {
+                        region.complete(takeSnapshots(world, fromX, fromZ, toX, toZ));
+                    } catch (Throwable e) {
+                        region.completeExceptionally(e);
+                    }
+                }, new Location(world, fromX << 4, 0, fromZ << 4));
+                regions.add(region);
+            }
+        }
+        return CompletableFuture.allOf(regions.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<ChunkSnapshot> snapshots = new ArrayList<>();
+            for (CompletableFuture<List<ChunkSnapshot>> region : regions) {
+                snapshots.addAll(region.join());
+            }
+            return snapshots;
+        });
+    }
+
+    private List<ChunkSnapshot> takeSnapshots(World world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                if (world.isChunkLoaded(chunkX, chunkZ))
+                    snapshots.add(world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+            }
+        }
+        return snapshots;
     }
 
     @Override
     public void run() {
-        long systemNanos = System.nanoTime();
-        tickTimeStorage.add(systemNanos);
-        int nanosThisTick = (int) (currentMillisPerTick * 1E6);
-        long stopTime = systemNanos + nanosThisTick;
-        MineTask nextTask;
-        while (System.nanoTime() <= stopTime && (nextTask = taskDeque.poll()) != null) {
-            if (nextTask instanceof BlockSetTask)
-                plugin.tasks.runRegionalTaskNow(nextTask, ((BlockSetTask) nextTask).getLocation());
-            else
-                nextTask.run();
+        long tick = currentTick.incrementAndGet();
+        //Hand each region with pending work to its own thread, regions then work through their queues in parallel
+        for (Map.Entry<RegionKey, RegionQueue> entry : regionQueues.entrySet()) {
+            RegionQueue queue = entry.getValue();
+            if (queue.hasWork()) {
+                if (queue.trySchedule(tick))
+                    plugin.tasks.runRegionalTaskNow(queue, queue.getLocation());
+            } else if (queue.isIdle(tick, IDLE_QUEUE_TICKS)) {
+                //Checked again inside the map, work may have been added since
+                regionQueues.computeIfPresent(entry.getKey(), (k, q) -> q.isIdle(tick, IDLE_QUEUE_TICKS) ? null : q);
+            }
         }
+        globalQueue.trySchedule(tick);
+        globalQueue.run();
     }
 
-    private double calculateAdjustment() {
-        //Calculate if we need to decrease our millis per tick, by checking current TPS
-        List<Long> tickTimes = tickTimeStorage.getEntries(20);
-        long endTime = (long) (tickTimes.get(tickTimes.size() - 1) / 1E6);
-        long startTime = (long) (tickTimes.get(0) / 1E6);
-        double ticksPerSecond = 1000.0 / ((double) (endTime - startTime) / tickTimes.size());
-        double limitedTicksPerSecond = Math.min(ticksPerSecond, 20);
-        double adjustment = maxMillisPerTick - currentMillisPerTick;
-        if (limitedTicksPerSecond < 10) {
-            adjustment -= 4;
-        } else if (limitedTicksPerSecond < 15) {
-            adjustment -= 3;
-        } else if (limitedTicksPerSecond < 18) {
-            adjustment -= 2;
-        } else if (limitedTicksPerSecond < 19) {
-            adjustment -= 1;
+    /**
+     * Get the number of ticks this scheduler has run for, used to measure how many ticks a reset takes
+     *
+     * @return the number of ticks since the scheduler started
+     */
+    public long getCurrentTick() {
+        return currentTick.get();
+    }
+
+    /**
+     * Take a snapshot of the scheduler's queues and budget
+     * The budget and tick times are those of the global tick, on Folia each region also has its own
+     *
+     * @return the current scheduler statistics
+     */
+    public SchedulerStats getStats() {
+        int queued = globalQueue.getQueuedTasks();
+        int activeRegions = 0;
+        for (RegionQueue queue : regionQueues.values()) {
+            int regionQueued = queue.getQueuedTasks();
+            queued += regionQueued;
+            if (regionQueued > 0)
+                activeRegions++;
         }
-        return adjustment;
+        TickBudget budget = globalQueue.getBudget();
+        return new SchedulerStats(queued, activeRegions, budget.getCurrentMillisPerTick(), budget.getUsedMillis(),
+                budget.getTickMillis(0.5), budget.getTickMillis(0.95), budget.getMaxTickMillis());
+    }
+
+    private RegionKey getRegionKey(Location loc) {
+        World world = loc.getWorld();
+        if (world == null)
+            return null;
+        return new RegionKey(world.getUID(), loc.getBlockX() >> REGION_SHIFT, loc.getBlockZ() >> REGION_SHIFT);
+    }
+
+    private RegionQueue createQueue(Location loc) {
+        return new RegionQueue(loc, createBudget(), null, regionBudgets);
+    }
+
+    private TickBudget createBudget() {
+        return new TickBudget(targetTickMillis, minMillisPerTick, maxMillisPerTick);
+    }
+
+    private boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private record RegionKey(UUID world, int x, int z) {
     }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Gives each Folia region one budget, however many of our queues fall inside it
+ * Our queues are keyed by fixed areas of 256 blocks, but Folia merges and splits its regions as players move.
+ * The region that is ticking is looked up when a queue is drained, so queues in a merged region share its budget.
+ * Folia has no API for this, so the region is read through reflection and the queue's own budget is used if that fails.
+ */
+class RegionBudgets {
+
+    //Regions are only held weakly, a region that has been merged into another or split up is dropped with its budget
+    private final Map<Object, TickBudget> budgets = new WeakHashMap<>();
+    private final Supplier<TickBudget> factory;
+    private volatile Method currentRegion;
+
+    RegionBudgets(Supplier<TickBudget> factory) {
+        this.factory = factory;
+        try {
+            currentRegion = Class.forName("io.papermc.paper.threadedregions.TickRegionScheduler")
+                    .getMethod("getCurrentRegion");
+        } catch (ReflectiveOperationException e) {
+            currentRegion = null;
+        }
+    }
+
+    /**
+     * Get the budget of the region that owns the current thread
+     *
+     * @param fallback The budget to use if the region can't be found
+     * @return the region's budget, or the fallback
+     */
+    TickBudget getCurrentBudget(TickBudget fallback) {
+        Method method = currentRegion;
+        if (method == null)
+            return fallback;
+        Object region;
+        try {
+            region = method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //The scheduler has changed in a way we don't understand, stop asking
+            currentRegion = null;
+            return fallback;
+        }
+        if (region == null)
+            return fallback;
+        synchronized (budgets) {
+            return budgets.computeIfAbsent(region, r -> factory.get());
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+import org.bukkit.Location;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pending work for a single region, drained on that region's own thread within that region's own budget
+ * Resets are shared fairly with deficit round robin, each job gets a quantum of blocks per pass rather than a
+ * whole reset at a time. Jobs in the high priority lane are served before any in the normal lane.
+ */
+class RegionQueue implements Runnable {
+
+    //One full chunk section, so every job can write at least one section per pass
+    private static final int QUANTUM = 16 * 16 * 16;
+    private final Location location;
+    private final Queue<MineTask> tasks = new ConcurrentLinkedQueue<>();
+    //Jobs are handed over here and moved into the lanes by the thread draining the region
+    private final Queue<JobQueue> incoming = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<JobQueue> highLane = new ArrayDeque<>();
+    private final ArrayDeque<JobQueue> normalLane = new ArrayDeque<>();
+    private final TickBudget budget;
+    //Only the global queue has one, regions measure their own ticks
+    private final ServerTickTime serverTickTime;
+    //Only regions have these, they find the budget of the Folia region that is draining them
+    private final RegionBudgets regionBudgets;
+    private volatile long dispatchedAt;
+    private volatile long dispatchTick;
+    private volatile long lastActiveTick;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    //Kept alongside the queues since counting a concurrent queue walks the whole thing
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @param location       A location within the region, null if this queue is drained on the global tick
+     * @param budget         The budget controlling how long this region may spend on mine resets each tick, regions
+     *                       only use it if the Folia region draining them can't be found
+     * @param serverTickTime The source of the server's tick times for the global queue, null for a region
+     * @param regionBudgets  The budgets of the Folia regions, null for the global queue
+     */
+    RegionQueue(Location location, TickBudget budget, ServerTickTime serverTickTime, RegionBudgets regionBudgets) {
+        this.location = location;
+        this.budget = budget;
+        this.serverTickTime = serverTickTime;
+        this.regionBudgets = regionBudgets;
+    }
+
+    void add(MineTask task, long tick) {
+        lastActiveTick = tick;
+        queued.incrementAndGet();
+        tasks.add(task);
+    }
+
+    void addJob(JobQueue job, long tick) {
+        lastActiveTick = tick;
+        queued.addAndGet(job.size());
+        incoming.add(job);
+    }
+
+    boolean hasWork() {
+        return queued.get() > 0;
+    }
+
+    /**
+     * Claim this queue for dispatch, this stops a busy region from being sent more than one drain at a time
+     *
+     * @param tick The scheduler tick the drain is dispatched in
+     * @return true if the caller should dispatch this queue, false if a drain is already pending
+     */
+    boolean trySchedule(long tick) {
+        if (!scheduled.compareAndSet(false, true))
+            return false;
+        dispatchedAt = System.nanoTime();
+        dispatchTick = tick;
+        lastActiveTick = tick;
+        return true;
+    }
+
+    /**
+     * Check if this queue can be dropped, it must be empty, not waiting to be drained and unused for a while
+     * A queue that is added to after this returns true must be added to through the map it is removed from,
+     * so that the removal and the addition can't interleave
+     *
+     * @param tick      The current scheduler tick
+     * @param idleTicks How many ticks the queue must have been unused for
+     * @return true if the queue has nothing to do and hasn't for at least idleTicks
+     */
+    boolean isIdle(long tick, long idleTicks) {
+        return !hasWork() && !scheduled.get() && tick - lastActiveTick >= idleTicks;
+    }
+
+    int getQueuedTasks() {
+        return queued.get();
+    }
+
+    Location getLocation() {
+        return location;
+    }
+
+    TickBudget getBudget() {
+        return budget;
+    }
+
+    @Override
+    public void run() {
+        try {
+            long start = System.nanoTime();
+            TickBudget budget = regionBudgets == null ? this.budget : regionBudgets.getCurrentBudget(this.budget);
+            long serverTick = serverTickTime == null ? -1 : serverTickTime.getTickNanos();
+            long stopTime = serverTick >= 0 ? budget.startDrain(dispatchTick, start, serverTick, true)
+                    : budget.startDrain(dispatchTick, start, measureTick(budget, start), false);
+            JobQueue job;
+            while ((job = incoming.poll()) != null) {
+                (job.getJob().isHighPriority() ? highLane : normalLane).add(job);
+            }
+            for (JobQueue j : highLane) {
+                j.newTick();
+            }
+            for (JobQueue j : normalLane) {
+                j.newTick();
+            }
+            MineTask nextTask;
+            //Tasks that aren't part of a reset job are run first, in the order they were added
+            while (System.nanoTime() <= stopTime && (nextTask = tasks.poll()) != null) {
+                queued.decrementAndGet();
+                nextTask.run();
+            }
+            if (serve(highLane, stopTime))
+                serve(normalLane, stopTime);
+            budget.finishDrain(start, System.nanoTime());
+        } finally {
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * Work out how long the last tick took, for the budget to adjust from
+     * This is only used when the server can't report its tick time, so it can only show that ticks are late.
+     * The global queue uses the time between ticks. A region's drain is dispatched from the global tick, so the time
+     * between drains is the global tick's and not the region's. Folia only reports a region's tick times through its
+     * internals, averaged over seconds, so a region's tick is estimated on its own thread instead: it is over the
+     * target by how late the region ran this drain after it was dispatched, and by how far the last tick's work overran.
+     *
+     * @param budget The budget the drain is using
+     * @param start  The time this drain started
+     * @return the estimated tick length in nanoseconds, -1 if it isn't known
+     */
+    private long measureTick(TickBudget budget, long start) {
+        if (location == null)
+            return budget.getTickIntervalNanos(start);
+        long targetNanos = (long) (budget.getTargetMillis() * 1E6);
+        //A healthy region runs the drain at the start of its next tick, which is never more than one tick away
+        long late = Math.max(0, start - dispatchedAt - targetNanos);
+        return targetNanos + late + budget.getOverrunNanos();
+    }
+
+    /**
+     * Work through a lane, giving every job that isn't capped a quantum each pass
+     *
+     * @param lane     The lane to serve
+     * @param stopTime The nano time to stop working at
+     * @return true if there is time left for another lane
+     */
+    private boolean serve(ArrayDeque<JobQueue> lane, long stopTime) {
+        while (!lane.isEmpty()) {
+            boolean progressed = false;
+            int jobs = lane.size();
+            for (int i = 0; i < jobs; i++) {
+                if (System.nanoTime() > stopTime)
+                    return false;
+                JobQueue job = lane.poll();
+                if (!job.isCapped()) {
+                    job.addQuantum(QUANTUM);
+                    SectionSetTask section;
+                    //The budget is spent a whole chunk section at a time
+                    while (!job.isCapped() && System.nanoTime() <= stopTime && (section = job.poll()) != null) {
+                        queued.decrementAndGet();
+                        section.run();
+                        progressed = true;
+                    }
+                }
+                //Finished jobs simply aren't put back
+                if (!job.isEmpty())
+                    lane.add(job);
+            }
+            //Every job left in the lane has hit its cap for this tick
+            if (!progressed)
+                return true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+/**
+ * Describes one mine's reset to the scheduler, so that mines resetting at the same time can share the tick budget
+ */
+public class ResetJob {
+
+    private final String mineName;
+    private final boolean highPriority;
+    private final int blocksPerTick;
+
+    /**
+     * @param mineName      The name of the mine being reset
+     * @param highPriority  True if this reset should be worked on before normal resets, e.g. players are waiting for it
+     * @param blocksPerTick The most blocks this reset may write each tick in each region, 0 for no limit
+     */
+    public ResetJob(String mineName, boolean highPriority, int blocksPerTick) {
+        this.mineName = mineName;
+        this.highPriority = highPriority;
+        this.blocksPerTick = blocksPerTick;
+    }
+
+    public String getMineName() {
+        return mineName;
+    }
+
+    public boolean isHighPriority() {
+        return highPriority;
+    }
+
+    public int getBlocksPerTick() {
+        return blocksPerTick;
+    }
+
+}
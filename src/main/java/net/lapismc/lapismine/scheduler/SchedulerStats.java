@@ -0,0 +1,32 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+/**
+ * A snapshot of the reset scheduler, see {@link LapisMineRunnable#getStats()}
+ *
+ * @param queuedTasks   The number of chunk sections waiting to be written
+ * @param activeRegions The number of Folia regions with sections waiting, always 0 on other servers
+ * @param budgetMillis  The time that may currently be spent on resets each tick
+ * @param usedMillis    The time actually spent on resets each tick, averaged over roughly the last second
+ * @param tickP50       The median tick length in milliseconds
+ * @param tickP95       The 95th percentile tick length in milliseconds
+ * @param tickMax       The longest recent tick in milliseconds
+ */
+public record SchedulerStats(int queuedTasks, int activeRegions, double budgetMillis, double usedMillis,
+                             double tickP50, double tickP95, double tickMax) {
+}
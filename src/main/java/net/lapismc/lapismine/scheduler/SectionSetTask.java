@@ -0,0 +1,185 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+import net.lapismc.lapismine.metrics.ResetTracker;
+import net.lapismc.lapismine.mines.MineBounds;
+import net.lapismc.lapismine.mines.ResetJournal;
+import net.lapismc.lapismine.mines.ResetPlan;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.BitSet;
+
+/**
+ * Writes the planned blocks within a single 16x16x16 chunk section as one unit of work
+ */
+public class SectionSetTask implements MineTask {
+
+    private final ResetPlan plan;
+    private final World world;
+    private final int chunkX, sectionY, chunkZ;
+    private final int xStart, xEnd, yStart, yEnd, zStart, zEnd;
+    private final boolean replaceOnlyAir;
+    private final BitSet mask;
+    private final Location location;
+    private final int blockCount;
+    private boolean applyPhysics = true;
+    private ResetTracker tracker;
+    private ResetJournal journal;
+    private int journalIndex;
+
+    public SectionSetTask(ResetPlan plan, World world, int chunkX, int sectionY, int chunkZ, boolean replaceOnlyAir,
+                          BitSet mask) {
+        this.plan = plan;
+        this.world = world;
+        this.chunkX = chunkX;
+        this.sectionY = sectionY;
+        this.chunkZ = chunkZ;
+        this.replaceOnlyAir = replaceOnlyAir;
+        this.mask = mask;
+        //Only the part of the section that is inside the mine is written
+        MineBounds bounds = plan.getBounds();
+        xStart = Math.max(bounds.xMin, chunkX << 4);
+        xEnd = Math.min(bounds.xMax, (chunkX << 4) + 15);
+        yStart = Math.max(bounds.yMin, sectionY << 4);
+        yEnd = Math.min(bounds.yMax, (sectionY << 4) + 15);
+        zStart = Math.max(bounds.zMin, chunkZ << 4);
+        zEnd = Math.min(bounds.zMax, (chunkZ << 4) + 15);
+        location = new Location(world, chunkX << 4, sectionY << 4, chunkZ << 4);
+        blockCount = countBlocks(bounds);
+    }
+
+    private int countBlocks(MineBounds bounds) {
+        if (xStart > xEnd || yStart > yEnd || zStart > zEnd)
+            return 0;
+        if (mask == null)
+            return (xEnd - xStart + 1) * (yEnd - yStart + 1) * (zEnd - zStart + 1);
+        int count = 0;
+        for (int y = yStart; y <= yEnd; y++) {
+            for (int z = zStart; z <= zEnd; z++) {
+                int rowStart = bounds.indexOf(xStart, y, z);
+                //Each row along x is contiguous in the mask
+                int next = mask.nextSetBit(rowStart);
+                int rowEnd = rowStart + (xEnd - xStart);
+                while (next != -1 && next <= rowEnd) {
+                    count++;
+                    next = mask.nextSetBit(next + 1);
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        if (blockCount > 0)
+            writeBlocks();
+        if (tracker != null)
+            tracker.sectionComplete(blockCount, System.nanoTime() - start);
+        if (journal != null)
+            journal.sectionComplete(journalIndex);
+    }
+
+    /**
+     * The Spigot API has no way to replace a chunk section's blocks in one call, that needs server internals which
+     * change every version, so blocks are set one at a time from a single chunk lookup
+     */
+    private void writeBlocks() {
+        MineBounds bounds = plan.getBounds();
+        //One chunk lookup for the whole section, the chunk is then reused for every block
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        //Work from the top of the section down, the same order the whole mine is reset in
+        for (int y = yEnd; y >= yStart; y--) {
+            for (int x = xStart; x <= xEnd; x++) {
+                for (int z = zStart; z <= zEnd; z++) {
+                    if (mask != null && !mask.get(bounds.indexOf(x, y, z)))
+                        continue;
+                    Block b = chunk.getBlock(x & 15, y, z & 15);
+                    //Checking here means we read the block from the chunk we are already holding
+                    if (replaceOnlyAir && !b.getType().isAir())
+                        continue;
+                    b.setType(plan.getMaterial(x, y, z), applyPhysics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set whether placing each block applies physics, e.g. letting sand fall and notifying neighbouring blocks
+     * Without physics the writes are cheaper, but falling blocks stay where they are placed and nearby water,
+     * lava and redstone aren't updated until something else changes next to them
+     *
+     * @param applyPhysics true to apply physics, the default
+     */
+    public void setApplyPhysics(boolean applyPhysics) {
+        this.applyPhysics = applyPhysics;
+    }
+
+    /**
+     * Set the tracker to report to once this section has been written
+     *
+     * @param tracker The tracker for the reset this section is part of
+     */
+    public void setTracker(ResetTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Set the journal to record this section in once it has been written
+     *
+     * @param journal The journal for the reset this section is part of
+     * @param index   The index of this section within the journal
+     */
+    public void setJournal(ResetJournal journal, int index) {
+        this.journal = journal;
+        this.journalIndex = index;
+    }
+
+    public int getChunkX() {
+        return chunkX;
+    }
+
+    public int getSectionY() {
+        return sectionY;
+    }
+
+    public int getChunkZ() {
+        return chunkZ;
+    }
+
+    /**
+     * Get a location within this section, used to find the region that owns it
+     *
+     * @return the minimum corner of the section
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * Get the number of blocks planned for this section
+     *
+     * @return the number of blocks this task will attempt to set
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.scheduler;
+
+import org.bukkit.Bukkit;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads how long the server's last tick took, on servers that can tell us
+ * Paper keeps the time spent inside each of its last 100 ticks, Spigot has no equivalent so nothing is reported there
+ */
+class ServerTickTime {
+
+    private volatile Method tickTimes;
+    //The tick times as they were last read, the entries that have changed since are the ticks that ran in between
+    private long[] lastTimes;
+
+    ServerTickTime() {
+        try {
+            tickTimes = Bukkit.getServer().getClass().getMethod("getTickTimes");
+        } catch (NoSuchMethodException e) {
+            tickTimes = null;
+        }
+    }
+
+    /**
+     * Get the time the server spent inside the ticks that ran since this was last called
+     * The ring buffer is compared with the last read rather than indexed by tick number, so this doesn't depend on
+     * when the server moves to the next slot. If more than one tick ran in between, the longest is reported.
+     *
+     * @return the tick time in nanoseconds, or -1 if the server doesn't report it or no new tick has finished
+     */
+    long getTickNanos() {
+        Method method = tickTimes;
+        if (method == null)
+            return -1;
+        long[] times;
+        try {
+            times = ((long[]) method.invoke(Bukkit.getServer())).clone();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //Folia has no single server tick and refuses the call, stop asking
+            tickTimes = null;
+            return -1;
+        }
+        long[] last = lastTimes;
+        lastTimes = times;
+        if (last == null || last.length != times.length)
+            return -1;
+        long longest = -1;
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] != last[i])
+                longest = Math.max(longest, times[i]);
+        }
+        return longest;
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.lapismc.lapismine.scheduler;
+
+/**
+ * Tracks how long a region's ticks take and decides how long we may spend working within each of them
+ * The caller measures each tick, e.g. the time Paper reports spending inside a tick. Spigot has no way to ask how
+ * long a tick took, so there the time between the starts of two ticks is used instead. That is at least 50ms on a
+ * healthy server, so it can only show that ticks are late and not how close to late they are. Measurements like that
+ * can shrink the budget, but never grow it past the budget a region starts with.
+ */
+class TickBudget {
+
+    private static final long IDLE_NANOS = 1_000_000_000L;
+    //How many ticks are kept for the percentiles, two seconds of ticks at 20 TPS
+    private static final int HISTORY = 40;
+    //How often the budget is adjusted from the history, lag spikes are handled every tick
+    private static final int ADJUST_INTERVAL = 10;
+    private static final double GROWTH = 1.1;
+    //The time between the starts of two ticks on a server that is keeping up
+    private static final double TICK_MILLIS = 50;
+    //The budget a new region starts with, before there is any history to adjust it from
+    private static final double INITIAL_MILLIS = 5;
+    private final double targetMillis;
+    private final double initialMillis;
+    private final double floorMillis;
+    private final double ceilingMillis;
+    private final TickTimeStorage tickTimeStorage = new TickTimeStorage(HISTORY);
+    private double currentMillisPerTick;
+    private long lastTick = 0;
+    private int ticksSinceAdjustment = 0;
+    private double usedMillis = 0;
+    //Several queues can share a budget, the first one drained for a scheduler tick starts the budget's tick
+    private long drainTick = -1;
+    private long stopTime;
+    private long workNanos;
+    private long overrunNanos;
+
+    /**
+     * @param targetMillis  The tick length to aim for, in milliseconds
+     * @param floorMillis   The least time that may be spent working each tick, so resets always progress
+     * @param ceilingMillis The most time that may be spent working each tick
+     */
+    TickBudget(double targetMillis, double floorMillis, double ceilingMillis) {
+        this.targetMillis = targetMillis;
+        this.floorMillis = floorMillis;
+        this.ceilingMillis = Math.max(floorMillis, ceilingMillis);
+        initialMillis = Math.max(this.floorMillis, Math.min(this.ceilingMillis, INITIAL_MILLIS));
+        currentMillisPerTick = initialMillis;
+    }
+
+    /**
+     * Record the start of a tick and get the time at which work in this tick should stop
+     * The time since the start of the last tick is used as the tick length, see {@link #tick(long, long, boolean)}
+     *
+     * @param now The current value of {@link System#nanoTime()}
+     * @return the nano time to stop working at
+     */
+    synchronized long tick(long now) {
+        return tick(now, getTickIntervalNanos(now), false);
+    }
+
+    /**
+     * Get the time since the start of the last tick
+     *
+     * @param now The current value of {@link System#nanoTime()}
+     * @return the time between the two tick starts, -1 if this is the first tick
+     */
+    synchronized long getTickIntervalNanos(long now) {
+        return lastTick == 0 ? -1 : now - lastTick;
+    }
+
+    /**
+     * Record the start of a tick and get the time at which work in this tick should stop
+     *
+     * @param now       The current value of {@link System#nanoTime()}
+     * @param tickNanos How long the last tick took, -1 if it isn't known
+     * @param measured  True if tickNanos is the time spent inside the tick, false if it can only show that the tick
+     *                  was late, such as the time between two ticks. The budget doesn't grow past where it started
+     *                  from measurements that can't show headroom.
+     * @return the nano time to stop working at
+     */
+    synchronized long tick(long now, long tickNanos, boolean measured) {
+        long last = lastTick;
+        lastTick = now;
+        //A region that has been idle has no useful tick history, start measuring again
+        if (last == 0 || now - last > IDLE_NANOS) {
+            tickTimeStorage.clear();
+            ticksSinceAdjustment = 0;
+            return now + (long) (currentMillisPerTick * 1E6);
+        }
+        if (tickNanos < 0)
+            return now + (long) (currentMillisPerTick * 1E6);
+        tickTimeStorage.add(tickNanos);
+        double tickMillis = tickNanos / 1E6;
+        //The time between ticks never drops below a full tick, so only compare it to a full tick or more
+        double target = measured ? targetMillis : Math.max(targetMillis, TICK_MILLIS);
+        if (tickMillis > target * 1.5) {
+            //A lag spike, back off straight away in proportion to how far over the target we are
+            scale(target / tickMillis, measured);
+            ticksSinceAdjustment = 0;
+        } else if (++ticksSinceAdjustment >= ADJUST_INTERVAL && tickTimeStorage.size() >= ADJUST_INTERVAL) {
+            scale(calculateAdjustment(target), measured);
+            ticksSinceAdjustment = 0;
+        }
+        return now + (long) (currentMillisPerTick * 1E6);
+    }
+
+    /**
+     * Work out how the budget should be scaled from the recent tick history
+     *
+     * @param targetMillis The tick length to aim for, in milliseconds
+     * @return the factor to multiply the budget by
+     */
+    double calculateAdjustment(double targetMillis) {
+        double p95 = tickTimeStorage.getPercentile(0.95) / 1E6;
+        if (p95 > targetMillis * 1.1) {
+            //Slow ticks are common, shrink in proportion but never by more than half at once
+            return Math.max(0.5, targetMillis / p95);
+        } else if (p95 <= targetMillis * 1.05) {
+            //Ticks are on target, there is headroom to reset faster
+            return GROWTH;
+        }
+        //Close enough to the target, hold steady rather than oscillate
+        return 1;
+    }
+
+    /**
+     * Start draining a queue that uses this budget and get the time at which it should stop
+     * Only the first drain for a scheduler tick records a tick, later drains in the same tick share its stop time
+     * so that queues sharing this budget can't spend more than one budget between them
+     *
+     * @param tick      The scheduler tick the drain was dispatched in
+     * @param now       The current value of {@link System#nanoTime()}
+     * @param tickNanos How long the last tick took, see {@link #tick(long, long, boolean)}
+     * @param measured  True if tickNanos is the time spent inside the tick
+     * @return the nano time to stop working at
+     */
+    synchronized long startDrain(long tick, long now, long tickNanos, boolean measured) {
+        if (tick == drainTick)
+            return stopTime;
+        if (drainTick >= 0)
+            usedMillis += (workNanos / 1E6 - usedMillis) * 0.05;
+        drainTick = tick;
+        workNanos = 0;
+        overrunNanos = 0;
+        stopTime = tick(now, tickNanos, measured);
+        return stopTime;
+    }
+
+    /**
+     * Record that a drain started with {@link #startDrain(long, long, long, boolean)} has finished
+     *
+     * @param start The time the drain started
+     * @param end   The time the drain finished
+     */
+    synchronized void finishDrain(long start, long end) {
+        workNanos += end - start;
+        overrunNanos = Math.max(overrunNanos, end - stopTime);
+    }
+
+    /**
+     * Get how far past its stop time the last tick's work ran
+     *
+     * @return the overrun in nanoseconds, 0 if the work stopped in time
+     */
+    synchronized long getOverrunNanos() {
+        return overrunNanos;
+    }
+
+    private void scale(double factor, boolean measured) {
+        //Without a real measurement the budget may recover from backing off, but it can't tell if there is more room
+        double limit = measured ? ceilingMillis : Math.max(initialMillis, Math.min(ceilingMillis, currentMillisPerTick));
+        currentMillisPerTick = Math.max(floorMillis, Math.min(limit, currentMillisPerTick * factor));
+    }
+
+    double getTargetMillis() {
+        return targetMillis;
+    }
+
+    synchronized double getCurrentMillisPerTick() {
+        return currentMillisPerTick;
+    }
+
+    /**
+     * Get the time spent working each tick, averaged over roughly the last second
+     *
+     * @return the time used per tick in milliseconds
+     */
+    synchronized double getUsedMillis() {
+        return usedMillis;
+    }
+
+    /**
+     * Get a percentile of the recent tick lengths
+     *
+     * @param percentile The percentile between 0 and 1
+     * @return the tick length in milliseconds, 0 if there is no history
+     */
+    synchronized double getTickMillis(double percentile) {
+        return tickTimeStorage.getPercentile(percentile) / 1E6;
+    }
+
+    /**
+     * Get the longest recent tick
+     *
+     * @return the tick length in milliseconds, 0 if there is no history
+     */
+    synchronized double getMaxTickMillis() {
+        return tickTimeStorage.getMax() / 1E6;
+    }
+}
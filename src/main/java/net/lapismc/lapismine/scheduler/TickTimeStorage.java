@@ -16,36 +16,77 @@
 
 package net.lapismc.lapismine.scheduler;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
+import java.util.Arrays;
 
+/**
+ * A fixed size ring buffer of tick durations in nanoseconds, the oldest value is overwritten once it is full
+ */
 public class TickTimeStorage {
 
-    private final Queue<Long> tickTimes;
-    private final int size;
+    private final long[] tickTimes;
+    private final long[] sorted;
+    private int next = 0;
+    private int size = 0;
 
     public TickTimeStorage(int size) {
-        tickTimes = new ArrayDeque<>();
-        this.size = size;
+        tickTimes = new long[size];
+        sorted = new long[size];
     }
 
     public void add(long time) {
-        tickTimes.add(time);
-        while (tickTimes.size() > size) {
-            tickTimes.remove();
-        }
+        tickTimes[next] = time;
+        next = (next + 1) % tickTimes.length;
+        if (size < tickTimes.length)
+            size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * Get the most recently added value
+     *
+     * @return the latest value, 0 if there are no values
+     */
+    public long getLatest() {
+        if (size == 0)
+            return 0;
+        return tickTimes[(next - 1 + tickTimes.length) % tickTimes.length];
     }
 
-    public List<Long> getEntries(int size) {
-        List<Long> entries = new ArrayList<>();
-        for (Long entry : tickTimes) {
-            entries.add(entry);
-            if (entries.size() == size)
-                break;
+    /**
+     * Get the largest stored value
+     *
+     * @return the largest value, 0 if there are no values
+     */
+    public long getMax() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, tickTimes[i]);
         }
-        return entries;
+        return max;
+    }
+
+    /**
+     * Get a percentile of the stored values, using the nearest rank
+     *
+     * @param percentile The percentile between 0 and 1, e.g. 0.95 for p95
+     * @return the value at that percentile, 0 if there are no values
+     */
+    public long getPercentile(double percentile) {
+        if (size == 0)
+            return 0;
+        //Order doesn't matter once the values are sorted, so the ring can be copied as is
+        System.arraycopy(tickTimes, 0, sorted, 0, size);
+        Arrays.sort(sorted, 0, size);
+        int rank = (int) Math.ceil(percentile * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, rank))];
     }
 
 }
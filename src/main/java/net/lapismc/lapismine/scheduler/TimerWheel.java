@@ -0,0 +1,168 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.scheduler;
+
+import net.lapismc.lapiscore.utils.LapisTaskHandler;
+import net.lapismc.lapismine.LapisMine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the deadlines of every mine, such as resets and plans, from a single repeating task
+ * This is a hashed timing wheel, each timer is kept in a bucket picked by the tick it is due in and each tick only
+ * that tick's bucket is checked. Timers due further away than one turn of the wheel wait in their bucket for the
+ * wheel to come round again. Scheduling, rescheduling and cancelling a timer are all constant time.
+ * Deadlines are system times, so a timer still fires on time after the server has lagged.
+ * Timers are scheduled from command and region threads on Folia, so the buckets are only touched while holding the
+ * wheel's lock. Tasks are run after the lock is released.
+ */
+public class TimerWheel {
+
+    private static final long TICK_MILLIS = 50;
+    //2048 ticks is a little over 100 seconds per turn
+    private static final int BUCKETS = 2048;
+    private static final int MASK = BUCKETS - 1;
+    private final Object lock = new Object();
+    private final Timer[] buckets = new Timer[BUCKETS];
+    private long lastTick;
+
+    public TimerWheel(LapisMine plugin) {
+        lastTick = System.currentTimeMillis() / TICK_MILLIS;
+        LapisTaskHandler.LapisTask task = plugin.tasks.runTaskTimer(this::advance, 1, 1, false);
+        plugin.tasks.addTask(task);
+    }
+
+    /**
+     * Create a timer, it does nothing until it is scheduled
+     *
+     * @param task The task to run each time the timer fires, it may schedule the timer again
+     * @return the new timer
+     */
+    public Timer newTimer(Runnable task) {
+        return new Timer(task);
+    }
+
+    private void advance() {
+        List<Timer> due = new ArrayList<>();
+        synchronized (lock) {
+            long nowTick = System.currentTimeMillis() / TICK_MILLIS;
+            long from = lastTick + 1;
+            //After a long pause every bucket only needs to be checked once
+            if (nowTick - from >= BUCKETS)
+                from = nowTick - BUCKETS + 1;
+            lastTick = nowTick;
+            for (long tick = from; tick <= nowTick; tick++) {
+                Timer timer = buckets[(int) (tick & MASK)];
+                while (timer != null) {
+                    Timer next = timer.next;
+                    if (timer.deadlineTick <= nowTick) {
+                        timer.unlink();
+                        due.add(timer);
+                    }
+                    timer = next;
+                }
+            }
+        }
+        //Timers are only run once the buckets are walked, since a task may schedule timers again
+        for (Timer timer : due) {
+            timer.task.run();
+        }
+    }
+
+    /**
+     * A single deadline, a timer is either waiting in one bucket of the wheel or not scheduled at all
+     */
+    public class Timer {
+
+        private final Runnable task;
+        private long deadline;
+        private long deadlineTick;
+        private int bucket = -1;
+        private Timer previous, next;
+
+        private Timer(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Schedule this timer, replacing the time it was scheduled for before
+         * A deadline that has already passed fires on the next tick
+         *
+         * @param deadline The system time to run the task at
+         */
+        public void schedule(long deadline) {
+            synchronized (lock) {
+                unlink();
+                this.deadline = deadline;
+                deadlineTick = Math.max(deadline / TICK_MILLIS, lastTick + 1);
+                bucket = (int) (deadlineTick & MASK);
+                next = buckets[bucket];
+                if (next != null)
+                    next.previous = this;
+                buckets[bucket] = this;
+            }
+        }
+
+        /**
+         * Stop this timer from firing, does nothing if it isn't scheduled
+         */
+        public void cancel() {
+            synchronized (lock) {
+                unlink();
+            }
+        }
+
+        /**
+         * @return true if this timer is waiting to fire
+         */
+        public boolean isScheduled() {
+            synchronized (lock) {
+                return bucket >= 0;
+            }
+        }
+
+        /**
+         * Get the time this timer was last scheduled for
+         *
+         * @return the deadline as a system time
+         */
+        public long getDeadline() {
+            synchronized (lock) {
+                return deadline;
+            }
+        }
+
+        //Must be called while holding the lock
+        private void unlink() {
+            if (bucket < 0)
+                return;
+            if (previous != null) {
+                previous.next = next;
+            } else {
+                buckets[bucket] = next;
+            }
+            if (next != null)
+                next.previous = previous;
+            previous = null;
+            next = null;
+            bucket = -1;
+        }
+    }
+
+}
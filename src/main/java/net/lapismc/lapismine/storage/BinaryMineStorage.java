@@ -0,0 +1,372 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores every mine in a single file, for servers with far too many mines to keep a file for each
+ * The file is an append only log, each save adds a compressed copy of the mine's YAML to the end.
+ * The position of the latest copy of each mine is kept in memory, so reading a mine is a single seek.
+ * Once more than half of the file is old copies it is rewritten with only the latest ones.
+ * Writes reach the disk when {@link #sync()} is called, which the save queue does after each batch of saves.
+ */
+public class BinaryMineStorage implements MineStorage {
+
+    //"LMSB", followed by the format version
+    private static final int MAGIC = 0x4C4D5342;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    //Type, name length, data length and checksum
+    private static final int RECORD_HEADER_LENGTH = 11;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //Files smaller than this are never compacted, there is little to gain
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024;
+    private final File file;
+    private final Logger logger;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    //The latest record for each mine, keyed by lower case name
+    private final Map<String, Entry> index = new HashMap<>();
+    private FileChannel channel;
+    //The total length of the records in the index, everything else in the file is waiting to be compacted away
+    private long liveBytes;
+
+    /**
+     * Open the storage file, creating it if it doesn't exist
+     * A record that was only partly written when the server stopped is discarded. A damaged record elsewhere in the
+     * file is skipped, and if the rest of the file can't be read the file is backed up before it is cut short.
+     *
+     * @param file   The file to store mines in
+     * @param logger The logger to report problems with the file to
+     * @throws IOException if the file can't be opened or isn't a mine storage file
+     */
+    public BinaryMineStorage(File file, Logger logger) throws IOException {
+        this.file = file;
+        this.logger = logger;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        try {
+            if (channel.size() == 0) {
+                writeFully(channel, createHeader(), 0);
+            } else {
+                loadIndex();
+            }
+            if (shouldCompact())
+                compact();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<String> getMineNames() {
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>();
+            for (Entry e : index.values()) {
+                names.add(e.name());
+            }
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String read(String mineName) throws IOException {
+        byte[] data;
+        lock.readLock().lock();
+        try {
+            Entry e = index.get(mineName.toLowerCase());
+            if (e == null)
+                return null;
+            data = new byte[e.dataLength()];
+            readFully(channel, ByteBuffer.wrap(data), e.offset() + e.length() - e.dataLength());
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void write(String mineName, String content) throws IOException {
+        byte[] data = deflate(content.getBytes(StandardCharsets.UTF_8));
+        lock.writeLock().lock();
+        try {
+            append(PUT, mineName, data);
+            if (shouldCompact())
+                compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String mineName) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!index.containsKey(mineName.toLowerCase()))
+                return;
+            append(DELETE, mineName, new byte[0]);
+            if (shouldCompact())
+                compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel.isOpen())
+                channel.force(true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!channel.isOpen())
+                return;
+            channel.force(true);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the file with only the latest copy of each mine
+     *
+     * @throws IOException if the new file can't be written, the old file is left as it was
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            Map<String, Entry> compacted = new HashMap<>();
+            long position = HEADER_LENGTH;
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, createHeader(), 0);
+                for (Map.Entry<String, Entry> mapEntry : index.entrySet()) {
+                    Entry e = mapEntry.getValue();
+                    //Records are copied as they are, there is no need to decompress them
+                    ByteBuffer record = ByteBuffer.allocate(e.length());
+                    readFully(channel, record, e.offset());
+                    record.flip();
+                    writeFully(out, record, position);
+                    compacted.put(mapEntry.getKey(), new Entry(e.name(), position, e.length(), e.dataLength()));
+                    position += e.length();
+                }
+                out.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                index.clear();
+                index.putAll(compacted);
+                liveBytes = position - HEADER_LENGTH;
+            } finally {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC)
+            throw new IOException(file.getName() + " is not a LapisMine storage file");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException(file.getName() + " was written by a different version of LapisMine (format "
+                    + version + ")");
+        long position = HEADER_LENGTH;
+        //True if reading stopped at something other than a record cut short by the end of the file
+        boolean unreadable = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.skipNBytes(HEADER_LENGTH);
+            while (position + RECORD_HEADER_LENGTH <= size) {
+                byte type = in.readByte();
+                int nameLength = in.readUnsignedShort();
+                int dataLength = in.readInt();
+                int checksum = in.readInt();
+                long length = RECORD_HEADER_LENGTH + nameLength + (long) dataLength;
+                if (position + length > size)
+                    break;
+                if ((type != PUT && type != DELETE) || dataLength < 0) {
+                    //Without a valid header there is no way to find where the next record starts
+                    unreadable = true;
+                    break;
+                }
+                byte[] name = in.readNBytes(nameLength);
+                byte[] data = in.readNBytes(dataLength);
+                if (checksum(name, data) != checksum) {
+                    //The last record may have been torn by a crash, anywhere else only this record is lost
+                    if (position + length == size)
+                        break;
+                    logger.warning("Skipping a damaged record at byte " + position + " of " + file.getName()
+                            + ", the mine it was for keeps its previous save");
+                    position += length;
+                    continue;
+                }
+                String mineName = new String(name, StandardCharsets.UTF_8);
+                if (type == PUT) {
+                    putEntry(new Entry(mineName, position, (int) length, dataLength));
+                } else {
+                    removeEntry(mineName);
+                }
+                position += length;
+            }
+        }
+        if (position >= size)
+            return;
+        if (unreadable) {
+            //The rest of the file may still hold mines, keep a copy before cutting it off so they can be recovered
+            File backup = new File(file.getParentFile(), file.getName() + ".corrupt-" + System.currentTimeMillis());
+            Files.copy(file.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.severe("Unable to read past byte " + position + " of " + file.getName() + ", the last "
+                    + (size - position) + " bytes have been removed. The original file was copied to " + backup.getName());
+        } else {
+            logger.warning("Discarding " + (size - position) + " bytes of incomplete mine data at the end of "
+                    + file.getName());
+        }
+        channel.truncate(position);
+    }
+
+    private void append(byte type, String mineName, byte[] data) throws IOException {
+        byte[] name = mineName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF)
+            throw new IOException("The mine name " + mineName + " is too long to store");
+        int length = RECORD_HEADER_LENGTH + name.length + data.length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.put(type).putShort((short) name.length).putInt(data.length).putInt(checksum(name, data));
+        record.put(name).put(data);
+        record.flip();
+        long position = channel.size();
+        writeFully(channel, record, position);
+        if (type == PUT) {
+            putEntry(new Entry(mineName, position, length, data.length));
+        } else {
+            removeEntry(mineName);
+        }
+    }
+
+    private void putEntry(Entry e) {
+        Entry old = index.put(e.name().toLowerCase(), e);
+        if (old != null)
+            liveBytes -= old.length();
+        liveBytes += e.length();
+    }
+
+    private void removeEntry(String mineName) {
+        Entry old = index.remove(mineName.toLowerCase());
+        if (old != null)
+            liveBytes -= old.length();
+    }
+
+    private boolean shouldCompact() throws IOException {
+        long recordBytes = channel.size() - HEADER_LENGTH;
+        return recordBytes >= COMPACT_MIN_BYTES && liveBytes < recordBytes / 2;
+    }
+
+    private ByteBuffer createHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        return header;
+    }
+
+    private int checksum(byte[] name, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void readFully(FileChannel from, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (from.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of " + file.getName());
+        }
+    }
+
+    private void writeFully(FileChannel to, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            to.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Where the latest record for a mine is in the file
+     *
+     * @param name       The name of the mine as it was saved
+     * @param offset     The position of the start of the record
+     * @param length     The length of the whole record
+     * @param dataLength The length of the compressed YAML at the end of the record
+     */
+    private record Entry(String name, long offset, int length, int dataLength) {
+    }
+
+}
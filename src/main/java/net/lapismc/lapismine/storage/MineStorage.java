@@ -0,0 +1,78 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Somewhere to keep the saved settings of each mine
+ * Mines are stored as the YAML produced by {@link net.lapismc.lapismine.mines.Mine#writeTo}, keyed by mine name.
+ * Reads may happen on several threads at once, writes and deletes come from a single thread.
+ */
+public interface MineStorage {
+
+    /**
+     * Get the names of every stored mine
+     *
+     * @return a list of mine names
+     * @throws IOException if the storage can't be read
+     */
+    List<String> getMineNames() throws IOException;
+
+    /**
+     * Read the YAML for a single mine
+     *
+     * @param mineName The name of the mine
+     * @return the stored YAML, or null if there is no mine of that name
+     * @throws IOException if the storage can't be read
+     */
+    String read(String mineName) throws IOException;
+
+    /**
+     * Store the YAML for a mine, replacing anything stored for it before
+     *
+     * @param mineName The name of the mine
+     * @param content  The YAML to store
+     * @throws IOException if the storage can't be written
+     */
+    void write(String mineName, String content) throws IOException;
+
+    /**
+     * Remove a mine from the storage, does nothing if it isn't stored
+     *
+     * @param mineName The name of the mine
+     * @throws IOException if the storage can't be written
+     */
+    void delete(String mineName) throws IOException;
+
+    /**
+     * Make sure everything written so far has reached the disk, so a crash can't lose it
+     *
+     * @throws IOException if the storage can't be written
+     */
+    void sync() throws IOException;
+
+    /**
+     * Make sure everything written has reached the disk and release any open files
+     *
+     * @throws IOException if the storage can't be written
+     */
+    void close() throws IOException;
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores each mine in its own YAML file, this is the original layout and lets mines be edited by hand
+ */
+public class YamlMineStorage implements MineStorage {
+
+    private final File folder;
+
+    /**
+     * @param folder The folder to keep the mine files in, it is created if it doesn't exist
+     */
+    public YamlMineStorage(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public List<String> getMineNames() throws IOException {
+        if (!folder.exists() && !folder.mkdirs())
+            throw new IOException("Unable to create " + folder.getPath());
+        File[] files = folder.listFiles((dir, fileName) -> fileName.endsWith(".yml"));
+        if (files == null)
+            throw new IOException("Unable to list " + folder.getPath());
+        List<String> names = new ArrayList<>();
+        for (File f : files) {
+            names.add(f.getName().substring(0, f.getName().length() - ".yml".length()));
+        }
+        return names;
+    }
+
+    @Override
+    public String read(String mineName) throws IOException {
+        File f = getFile(mineName);
+        if (!f.exists())
+            return null;
+        return Files.readString(f.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(String mineName, String content) throws IOException {
+        File f = getFile(mineName);
+        File temp = new File(folder, f.getName() + ".tmp");
+        Files.writeString(temp.toPath(), content, StandardCharsets.UTF_8);
+        //Replace in one step so a crash or the file watcher never sees half a file
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void delete(String mineName) throws IOException {
+        Files.deleteIfExists(getFile(mineName).toPath());
+    }
+
+    @Override
+    public void sync() {
+        //Every write replaces a whole file in one step, there is nothing buffered to force out
+    }
+
+    @Override
+    public void close() {
+        //Every write is a complete file, there is nothing left open
+    }
+
+    private File getFile(String mineName) {
+        return new File(folder, mineName + ".yml");
+    }
+
+}
@@ -24,6 +24,7 @@ import static org.bukkit.Bukkit.getServer;
 public class WorldEditIntegrationManager {
 
     private WorldEdit worldEdit;
+    private WorldEditResetEngine resetEngine;
 
     public WorldEditIntegrationManager(LapisMine plugin) {
         //Check which world edit is installed
@@ -31,6 +32,12 @@ public class WorldEditIntegrationManager {
         boolean isFAWEInstalled = getServer().getPluginManager().isPluginEnabled("FastAsyncWorldEdit");
         if (isWorldEditInstalled || isFAWEInstalled) {
             worldEdit = new WorldEdit(isFAWEInstalled);
+            //Plain WorldEdit edits on the server thread, so only FAWE is fast enough to replace our own scheduler
+            String engine = plugin.getConfig().getString("ResetEngine", "Auto");
+            if (isFAWEInstalled && !engine.equalsIgnoreCase("BuiltIn")) {
+                resetEngine = new WorldEditResetEngine(plugin);
+                plugin.getLogger().info("Resetting mines with FastAsyncWorldEdit");
+            }
         } else {
             plugin.getLogger().severe("WorldEdit or FAWE not installed." +
                     " You must install wither world edit or fast async world edit");
@@ -43,4 +50,13 @@ public class WorldEditIntegrationManager {
         return worldEdit;
     }
 
+    /**
+     * Get the engine that resets mines through FastAsyncWorldEdit
+     *
+     * @return the reset engine, or null if FAWE isn't installed or the built-in scheduler is configured
+     */
+    public WorldEditResetEngine getResetEngine() {
+        return resetEngine;
+    }
+
 }
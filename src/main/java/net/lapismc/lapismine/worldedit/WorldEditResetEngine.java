@@ -0,0 +1,106 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.worldedit;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MaxChangedBlocksException;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.function.mask.BlockTypeMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.pattern.Pattern;
+import com.sk89q.worldedit.function.pattern.RandomPattern;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.SideEffectSet;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import net.lapismc.lapismine.LapisMine;
+import net.lapismc.lapismine.mines.MineBounds;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Fills mines through a FastAsyncWorldEdit edit session instead of the built-in reset scheduler
+ * FAWE queues the changes itself and writes them to the chunks off the server thread, so the whole mine is filled at once
+ */
+public class WorldEditResetEngine {
+
+    private final LapisMine plugin;
+
+    WorldEditResetEngine(LapisMine plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Fill a cuboid with a random mix of materials on a worker thread
+     * The pattern is built before this returns, so the materials can be changed as soon as it is called
+     *
+     * @param world          The world the cuboid is in
+     * @param bounds         The cuboid to fill
+     * @param materials      The materials and their chance of occurring between 0 and 1
+     * @param surface        The material for the top layer, null or air for no surface
+     * @param replaceOnlyAir true to leave blocks that aren't air as they are
+     * @return a future completed with the number of blocks changed
+     */
+    public CompletableFuture<Integer> fill(World world, MineBounds bounds, Map<Material, Double> materials,
+                                           Material surface, boolean replaceOnlyAir) {
+        RandomPattern pattern = new RandomPattern();
+        for (Map.Entry<Material, Double> entry : materials.entrySet()) {
+            BlockType type = BukkitAdapter.asBlockType(entry.getKey());
+            //Items can't be placed, they are left out and the other chances are scaled to fill the gap
+            if (type != null && entry.getValue() > 0)
+                pattern.add(type.getDefaultState(), entry.getValue());
+        }
+        BlockType surfaceType = surface == null || surface == Material.AIR ? null : BukkitAdapter.asBlockType(surface);
+        com.sk89q.worldedit.world.World weWorld = BukkitAdapter.adapt(world);
+        return CompletableFuture.supplyAsync(() -> {
+            //FAWE applies its async queue to every edit session, disabling side effects is its fast mode
+            try (EditSession session = com.sk89q.worldedit.WorldEdit.getInstance().newEditSessionBuilder()
+                    .world(weWorld).maxBlocks(-1).build()) {
+                session.setSideEffectApplier(SideEffectSet.none());
+                Mask mask = replaceOnlyAir
+                        ? new BlockTypeMask(session, BlockTypes.AIR, BlockTypes.CAVE_AIR, BlockTypes.VOID_AIR) : null;
+                int changed = 0;
+                int fillTop = surfaceType == null ? bounds.yMax : bounds.yMax - 1;
+                if (fillTop >= bounds.yMin)
+                    changed += fill(session, region(weWorld, bounds, bounds.yMin, fillTop), mask, pattern);
+                if (surfaceType != null)
+                    changed += fill(session, region(weWorld, bounds, bounds.yMax, bounds.yMax), mask,
+                            surfaceType.getDefaultState());
+                return changed;
+            } catch (MaxChangedBlocksException e) {
+                throw new CompletionException(e);
+            }
+        }, plugin.workers);
+    }
+
+    private int fill(EditSession session, Region region, Mask mask, Pattern pattern) throws MaxChangedBlocksException {
+        return mask == null ? session.setBlocks(region, pattern) : session.replaceBlocks(region, mask, pattern);
+    }
+
+    private Region region(com.sk89q.worldedit.world.World world, MineBounds bounds, int yMin, int yMax) {
+        return new CuboidRegion(world, BlockVector3.at(bounds.xMin, yMin, bounds.zMin),
+                BlockVector3.at(bounds.xMax, yMax, bounds.zMax));
+    }
+
+}
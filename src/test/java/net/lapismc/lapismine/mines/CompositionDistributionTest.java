@@ -0,0 +1,84 @@
+/*
+ * Copyright 2025 Benjamin Martin
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.lapismc.lapismine.mines;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the alias table picks materials with the same distribution as the TreeMap sampler it replaced
+ */
+class CompositionDistributionTest {
+
+    private static final int SAMPLES = 1_000_000;
+    //The chi-square value with 2 degrees of freedom that a correct sampler exceeds one time in a thousand
+    private static final double CRITICAL_VALUE = 13.816;
+
+    private Composition createComposition() {
+        //The plugin is only needed to fill an incomplete composition, this one adds up to 1
+        Composition composition = new Composition(null);
+        composition.setMaterial(Material.STONE, 0.5);
+        composition.setMaterial(Material.COAL_ORE, 0.3);
+        composition.setMaterial(Material.DIAMOND_ORE, 0.2);
+        return composition;
+    }
+
+    @Test
+    void aliasSamplerMatchesPercentages() {
+        Composition composition = createComposition();
+        Map<Material, Integer> distribution = composition.getDistribution(SAMPLES, new Random(42));
+        double chiSquare = chiSquare(composition.getMaterialMap(), distribution);
+        assertTrue(chiSquare < CRITICAL_VALUE, "Alias sampler is off the composition, chi-square " + chiSquare);
+    }
+
+    @Test
+    void legacySamplerMatchesPercentages() {
+        Composition composition = createComposition();
+        Map<Material, Integer> distribution = composition.getLegacyDistribution(SAMPLES, new Random(42));
+        double chiSquare = chiSquare(composition.getMaterialMap(), distribution);
+        assertTrue(chiSquare < CRITICAL_VALUE, "TreeMap sampler is off the composition, chi-square " + chiSquare);
+    }
+
+    @Test
+    void samplersAgree() {
+        Composition composition = createComposition();
+        Map<Material, Integer> alias = composition.getDistribution(SAMPLES, new Random(7));
+        Map<Material, Integer> legacy = composition.getLegacyDistribution(SAMPLES, new Random(7));
+        for (Material mat : composition.getMaterialMap().keySet()) {
+            double difference = Math.abs(alias.getOrDefault(mat, 0) - legacy.getOrDefault(mat, 0)) / (double) SAMPLES;
+            //Both are within a fraction of a percent of the composition, so they must be close to each other
+            assertTrue(difference < 0.005, mat + " differs by " + difference + " between the samplers");
+        }
+    }
+
+    private double chiSquare(Map<Material, Double> expected, Map<Material, Integer> observed) {
+        double chiSquare = 0;
+        for (Map.Entry<Material, Double> entry : expected.entrySet()) {
+            double expectedCount = entry.getValue() * SAMPLES;
+            double difference = observed.getOrDefault(entry.getKey(), 0) - expectedCount;
+            chiSquare += difference * difference / expectedCount;
+        }
+        return chiSquare;
+    }
+
+}